@@ -0,0 +1,77 @@
+package com.navent.realestate.metrics;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+/**
+ * Contexto MVC minimo para los benchmarks: un controller con varios mappings al estilo de los servicios de listings.
+ */
+@Configuration
+@EnableWebMvc
+public class BenchmarkWebConfig {
+
+	static final String METRIC_NAME = "http.server.requests";
+	static final String ENDPOINT_PATTERN = "/v1/(ads|credits|reports).*";
+
+	static AnnotationConfigWebApplicationContext createContext() {
+		AnnotationConfigWebApplicationContext ctx = new AnnotationConfigWebApplicationContext();
+		ctx.setServletContext(new MockServletContext());
+		ctx.register(BenchmarkWebConfig.class);
+		ctx.refresh();
+		return ctx;
+	}
+
+	static NaventMetricsProperties properties(boolean apdex) {
+		NaventMetricsProperties properties = new NaventMetricsProperties();
+		properties.getEndpoint().setPattern(ENDPOINT_PATTERN);
+		properties.getApdex().setEnabled(apdex);
+		properties.getApdex().setMillis(100);
+		return properties;
+	}
+
+	@Bean
+	public AdsController adsController() {
+		return new AdsController();
+	}
+
+	@RestController
+	public static class AdsController {
+
+		@RequestMapping(path = "/v1/ads/{id}", method = RequestMethod.GET)
+		public String ad(@PathVariable String id) {
+			return id;
+		}
+
+		@RequestMapping(path = "/v1/ads", method = RequestMethod.GET)
+		public String ads() {
+			return "";
+		}
+
+		@RequestMapping(path = "/v1/ads", method = RequestMethod.POST)
+		public String createAd() {
+			return "";
+		}
+
+		@RequestMapping(path = "/v1/credits/{account}", method = RequestMethod.GET)
+		public String credits(@PathVariable String account) {
+			return account;
+		}
+
+		@RequestMapping(path = "/v1/reports/{type}/{id}", method = RequestMethod.GET)
+		public String report(@PathVariable String type, @PathVariable String id) {
+			return id;
+		}
+
+		@RequestMapping(path = "/health", method = RequestMethod.GET)
+		public String health() {
+			return "ok";
+		}
+	}
+}
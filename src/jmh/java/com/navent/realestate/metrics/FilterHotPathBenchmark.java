@@ -0,0 +1,207 @@
+package com.navent.realestate.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import org.springframework.web.servlet.handler.HandlerMappingIntrospector;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Costo por request de cada etapa de {@link NaventWebMvcMetricsFilter} y de {@link MetricsInterceptor}.
+ * Los contadores de status se miden aparte en {@link HttpStatusCountersBenchmark}.
+ * Correr con {@code ./gradlew jmh -Pjmh.include=FilterHotPathBenchmark}; el profiler de GC reporta
+ * {@code gc.alloc.rate.norm} (bytes alocados por operacion).
+ * <p>
+ * Las variantes {@code *Concurrent} corren con 8 threads sobre el mismo filtro y registry.
+ * <p>
+ * {@code record} e {@code interceptorPreHandle} usan un contexto nuevo por invocacion, armado en un
+ * {@code @Setup(Level.Invocation)} como lo dejaria el filtro; ese setup agrega algo de ruido a operaciones de
+ * pocos nanosegundos. {@code doFilter} pasa por una cadena que llama a {@link MetricsInterceptor}, como el
+ * DispatcherServlet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterHotPathBenchmark {
+	@Param({ "false", "true" })
+	public boolean apdex;
+
+	AnnotationConfigWebApplicationContext ctx;
+	MeterRegistry registry;
+	HandlerMappingIntrospector introspector;
+	RequestMetricsRecorder recorder;
+	NaventWebMvcMetricsFilter filter;
+	MetricsInterceptor interceptor;
+
+	@Setup
+	@SuppressWarnings("deprecation")
+	public void setup() {
+		ctx = BenchmarkWebConfig.createContext();
+		registry = new SimpleMeterRegistry();
+		io.micrometer.core.instrument.Metrics.addRegistry(registry);
+		// el filtro ya no usa el introspector, queda como referencia del costo de resolver el handler
+		introspector = new HandlerMappingIntrospector(ctx);
+		NaventMetricsProperties properties = BenchmarkWebConfig.properties(apdex);
+		HandlerMetadataTable handlerMetadata = new HandlerMetadataTable(registry, BenchmarkWebConfig.METRIC_NAME,
+				properties);
+		handlerMetadata.refresh(ctx);
+		recorder = new RequestMetricsRecorder(registry, BenchmarkWebConfig.METRIC_NAME, true, properties);
+		filter = new NaventWebMvcMetricsFilter(new CustomWebMvcTagsProvider(), recorder,
+				BenchmarkWebConfig.METRIC_NAME, properties, handlerMetadata);
+		interceptor = new MetricsInterceptor();
+	}
+
+	@TearDown
+	public void tearDown() {
+		io.micrometer.core.instrument.Metrics.removeRegistry(registry);
+		ctx.close();
+	}
+
+	@State(Scope.Thread)
+	public static class RequestState {
+		MockHttpServletRequest request;
+		MockHttpServletResponse response;
+		Object handler;
+		FilterChain chain;
+
+		@Setup(Level.Trial)
+		public void setup(FilterHotPathBenchmark benchmark) throws Exception {
+			request = new MockHttpServletRequest("GET", "/v1/ads/1234");
+			response = new MockHttpServletResponse();
+			response.setStatus(200);
+			handler = benchmark.introspector.getMatchableHandlerMapping(request).getHandler(request).getHandler();
+			// lo minimo del DispatcherServlet que le importa al filtro: el interceptor con el handler resuelto
+			chain = (chainRequest, chainResponse) -> benchmark.interceptor.preHandle(
+					(HttpServletRequest) chainRequest, (HttpServletResponse) chainResponse, handler);
+		}
+	}
+
+	/**
+	 * Un request en curso como lo deja el filtro antes de la cadena: contexto iniciado y en el atributo del request,
+	 * sin handler.
+	 */
+	@State(Scope.Thread)
+	public static class StartedState {
+		NaventWebMvcMetricsFilter.TimingSampleContext timingContext;
+
+		@Setup(Level.Invocation)
+		public void setup(FilterHotPathBenchmark benchmark, RequestState state) {
+			timingContext = benchmark.start(state);
+		}
+
+		@TearDown(Level.Invocation)
+		public void tearDown(FilterHotPathBenchmark benchmark, RequestState state) {
+			benchmark.finish(timingContext, state);
+		}
+	}
+
+	/**
+	 * Un request en curso con el handler ya informado por el interceptor, listo para registrarse.
+	 */
+	@State(Scope.Thread)
+	public static class ResolvedState {
+		NaventWebMvcMetricsFilter.TimingSampleContext timingContext;
+
+		@Setup(Level.Invocation)
+		public void setup(FilterHotPathBenchmark benchmark, RequestState state) {
+			timingContext = benchmark.start(state);
+			timingContext.handlerResolved(state.request, state.response, state.handler);
+		}
+
+		@TearDown(Level.Invocation)
+		public void tearDown(FilterHotPathBenchmark benchmark, RequestState state) {
+			benchmark.finish(timingContext, state);
+		}
+	}
+
+	NaventWebMvcMetricsFilter.TimingSampleContext start(RequestState state) {
+		NaventWebMvcMetricsFilter.TimingSampleContext timingContext = recorder
+				.started(filter.new TimingSampleContext());
+		state.request.setAttribute(NaventWebMvcMetricsFilter.TIMING_SAMPLE, timingContext);
+		return timingContext;
+	}
+
+	/**
+	 * Registra el request si la operacion medida no lo hizo, para no dejar requests en vuelo.
+	 */
+	void finish(NaventWebMvcMetricsFilter.TimingSampleContext timingContext, RequestState state) {
+		if (state.request.getAttribute(NaventWebMvcMetricsFilter.TIMING_SAMPLE) != null) {
+			filter.record(timingContext, state.request, state.response.getStatus(), null);
+		}
+	}
+
+	@Benchmark
+	public Object resolveHandler(RequestState state) throws Exception {
+		return introspector.getMatchableHandlerMapping(state.request).getHandler(state.request);
+	}
+
+	@Benchmark
+	public Object timingSampleContext(RequestState state) {
+		NaventWebMvcMetricsFilter.TimingSampleContext timingContext = filter.new TimingSampleContext();
+		timingContext.handlerResolved(state.request, state.response, state.handler);
+		return timingContext;
+	}
+
+	@Benchmark
+	public void record(RequestState state, ResolvedState resolved) {
+		filter.record(resolved.timingContext, state.request, state.response.getStatus(), null);
+	}
+
+	@Benchmark
+	public boolean interceptorPreHandle(RequestState state, StartedState started) throws Exception {
+		return interceptor.preHandle(state.request, state.response, state.handler);
+	}
+
+	@Benchmark
+	public void metricsCounter() {
+		Metrics.counter("benchmark.counter", "type", "listing").increment();
+	}
+
+	@Benchmark
+	public void doFilter(RequestState state) throws Exception {
+		filter.doFilter(state.request, state.response, state.chain);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public void recordConcurrent(RequestState state, ResolvedState resolved) {
+		record(state, resolved);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public void metricsCounterConcurrent() {
+		metricsCounter();
+	}
+
+	@Benchmark
+	@Threads(8)
+	public void doFilterConcurrent(RequestState state) throws Exception {
+		doFilter(state);
+	}
+}
@@ -0,0 +1,95 @@
+package com.navent.realestate.metrics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Un thread escribe el archivo de {@link MappedMetricsExporter} sin pausa mientras otros lo leen con
+ * {@link MappedMetricsReader}. Los dos counters se incrementan juntos antes de cada tick, asi que una foto con
+ * valores distintos es una lectura inconsistente y corta el benchmark.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappedMetricsBenchmark {
+	private static final String FIRST = "benchmark.first:count";
+	private static final String SECOND = "benchmark.second:count";
+
+	Path path;
+	MeterRegistry registry;
+	Counter first;
+	Counter second;
+	MappedMetricsExporter exporter;
+
+	@Setup
+	public void setup() throws IOException {
+		registry = new SimpleMeterRegistry();
+		first = registry.counter("benchmark.first");
+		second = registry.counter("benchmark.second");
+		for (int i = 0; i < 200; i++) {
+			registry.counter("benchmark.filler", "index", Integer.toString(i));
+		}
+		path = Files.createTempFile("navent-metrics", ".mmap");
+		exporter = new MappedMetricsExporter(path, 1024, 1);
+		exporter.export(MetricsSnapshot.take(registry));
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(path);
+	}
+
+	@State(Scope.Thread)
+	public static class ReaderState {
+		MappedMetricsReader reader;
+
+		@Setup
+		public void setup(MappedMetricsBenchmark benchmark) throws IOException {
+			reader = MappedMetricsReader.open(benchmark.path);
+		}
+	}
+
+	@Benchmark
+	@Group("concurrent")
+	@GroupThreads(1)
+	public void write() {
+		first.increment();
+		second.increment();
+		exporter.export(MetricsSnapshot.take(registry));
+	}
+
+	@Benchmark
+	@Group("concurrent")
+	@GroupThreads(3)
+	public long read(ReaderState state) {
+		MappedMetricsReader.Snapshot snapshot = state.reader.read();
+		if (!snapshot.get(FIRST).equals(snapshot.get(SECOND))) {
+			throw new IllegalStateException("Inconsistent snapshot " + snapshot.getSequence() + ": "
+					+ snapshot.get(FIRST) + " != " + snapshot.get(SECOND));
+		}
+		return snapshot.getSequence();
+	}
+}
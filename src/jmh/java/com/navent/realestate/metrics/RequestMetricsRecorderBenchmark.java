@@ -0,0 +1,82 @@
+package com.navent.realestate.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import org.springframework.web.servlet.handler.HandlerMappingIntrospector;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Costo de medir un request con {@link RequestMetricsRecorder} sin pasar por el API de servlets, que es lo que haria
+ * un filtro no bloqueante. Se compara con {@code FilterHotPathBenchmark.doFilter}, el mismo registro dentro del
+ * filtro de servlets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestMetricsRecorderBenchmark {
+
+	@Param({ "false", "true" })
+	boolean apdex;
+
+	AnnotationConfigWebApplicationContext ctx;
+	RequestMetricsRecorder recorder;
+	HandlerMetadataTable handlerMetadata;
+	Object handler;
+
+	@Setup
+	public void setup() throws Exception {
+		ctx = BenchmarkWebConfig.createContext();
+		MeterRegistry registry = new SimpleMeterRegistry();
+		NaventMetricsProperties properties = BenchmarkWebConfig.properties(apdex);
+		recorder = new RequestMetricsRecorder(registry, BenchmarkWebConfig.METRIC_NAME, true, properties);
+		handlerMetadata = new HandlerMetadataTable(registry, BenchmarkWebConfig.METRIC_NAME, properties);
+		handlerMetadata.refresh(ctx);
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/v1/ads/1234");
+		handler = new HandlerMappingIntrospector(ctx).getMatchableHandlerMapping(request).getHandler(request)
+				.getHandler();
+	}
+
+	@TearDown
+	public void tearDown() {
+		ctx.close();
+	}
+
+	@Benchmark
+	public long startStop() {
+		RequestTiming timing = recorder.start();
+		return recorder.stop(timing, 200, null);
+	}
+
+	@Benchmark
+	public long startStopEndpoint() {
+		RequestTiming timing = recorder.start();
+		timing.handlerResolved(handlerMetadata, handler, "GET", "/v1/ads/{id}");
+		return recorder.stop(timing, 200, null);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public long startStopEndpointConcurrent() {
+		return startStopEndpoint();
+	}
+}
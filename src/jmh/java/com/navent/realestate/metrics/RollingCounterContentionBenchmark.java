@@ -0,0 +1,77 @@
+package com.navent.realestate.metrics;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compara {@link StripedRollingCounter} contra {@link SmoothlyDecayingRollingCounterMeter} con todos los threads
+ * marcando el mismo contador, como pasa con los contadores de {@code .uri.root} en el filtro.
+ * <p>
+ * {@code ./gradlew jmh} corre con la cantidad de threads de las anotaciones; {@link #main(String[])} barre de 1 a 64.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@SuppressWarnings("deprecation")
+public class RollingCounterContentionBenchmark {
+	private static final int[] THREADS = { 1, 2, 4, 8, 16, 32, 64 };
+
+	private StripedRollingCounter striped;
+	private SmoothlyDecayingRollingCounterMeter rolling;
+
+	@Setup
+	public void setup() {
+		striped = new StripedRollingCounter(Duration.ofSeconds(60), 10);
+		rolling = new SmoothlyDecayingRollingCounterMeter(Duration.ofSeconds(60), 10);
+	}
+
+	@Benchmark
+	public void stripedMark() {
+		striped.mark();
+	}
+
+	@Benchmark
+	public void rollingMark() {
+		rolling.mark();
+	}
+
+	@Benchmark
+	public long stripedGetCount() {
+		return striped.getCount();
+	}
+
+	@Benchmark
+	public long rollingGetCount() {
+		return rolling.getCount();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		for (int threads : THREADS) {
+			Options options = new OptionsBuilder()
+					.include(RollingCounterContentionBenchmark.class.getSimpleName() + ".*Mark")
+					.threads(threads)
+					.addProfiler(GCProfiler.class)
+					.build();
+			new Runner(options).run();
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package com.navent.realestate.metrics;
+
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Costo de registrar una latencia en el timer de la app con {@code publishPercentileHistogram} contra
+ * {@link RollingLatencyPercentiles}. {@link #main(String[])} imprime ademas la memoria estimada de cada uno.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RollingLatencyBenchmark {
+
+	Timer histogramTimer;
+	RollingLatencyPercentiles rollingPercentiles;
+
+	@Setup
+	public void setup() {
+		MeterRegistry registry = new SimpleMeterRegistry();
+		histogramTimer = Timer.builder("benchmark.histogram").publishPercentileHistogram().register(registry);
+		rollingPercentiles = new RollingLatencyPercentiles(registry, "benchmark.rolling", Collections.emptyList(),
+				"benchmark", new NaventMetricsProperties.RollingLatency());
+	}
+
+	@Benchmark
+	public void histogramTimer() {
+		histogramTimer.record(latencyNanos(), TimeUnit.NANOSECONDS);
+	}
+
+	@Benchmark
+	public void rollingPercentiles() {
+		rollingPercentiles.record(latencyNanos());
+	}
+
+	@Benchmark
+	@Threads(8)
+	public void histogramTimerConcurrent() {
+		histogramTimer();
+	}
+
+	@Benchmark
+	@Threads(8)
+	public void rollingPercentilesConcurrent() {
+		rollingPercentiles();
+	}
+
+	private static long latencyNanos() {
+		// entre 1ms y 2s, como los requests de la app
+		return ThreadLocalRandom.current().nextLong(TimeUnit.MILLISECONDS.toNanos(1), TimeUnit.SECONDS.toNanos(2));
+	}
+
+	public static void main(String[] args) {
+		RollingLatencyBenchmark benchmark = new RollingLatencyBenchmark();
+		benchmark.setup();
+		for (int i = 0; i < 1_000_000; i++) {
+			benchmark.histogramTimer();
+			benchmark.rollingPercentiles();
+		}
+		System.out.println("publishPercentileHistogram buckets: "
+				+ benchmark.histogramTimer.takeSnapshot().histogramCounts().length);
+		System.out.println("rolling HDR footprint (bytes): "
+				+ benchmark.rollingPercentiles.getEstimatedFootprintInBytes());
+	}
+}
@@ -0,0 +1,64 @@
+package com.navent.realestate.metrics;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Costo de buscar un timer ya registrado por nombre y tags, como hace el filtro de micrometer en cada request, con y
+ * sin {@link TagCardinalityLimiter}, y de una url nueva por request (un scanner) con el limite ya alcanzado.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TagCardinalityLimiterBenchmark {
+	private static final String NAME = "http.server.requests";
+
+	MeterRegistry plain;
+	MeterRegistry limited;
+
+	@Setup
+	public void setup() {
+		plain = new SimpleMeterRegistry();
+		limited = new SimpleMeterRegistry();
+		NaventMetricsProperties.Cardinality cardinality = new NaventMetricsProperties.Cardinality();
+		TagCardinalityLimiter limiter = new TagCardinalityLimiter(cardinality, NAME);
+		limited.config().meterFilter(limiter);
+		limiter.bindTo(limited);
+		for (int i = 0; i < cardinality.getMaxTagCombinations(); i++) {
+			limited.timer(NAME, "method", "GET", "uri", "/v1/ads/" + i);
+		}
+	}
+
+	@Benchmark
+	public Timer knownUri() {
+		return plain.timer(NAME, "method", "GET", "uri", "/v1/ads/{id}");
+	}
+
+	@Benchmark
+	public Timer knownUriLimited() {
+		return limited.timer(NAME, "method", "GET", "uri", "/v1/ads/0");
+	}
+
+	@Benchmark
+	public Timer scannerUriLimited() {
+		return limited.timer(NAME, "method", "GET", "uri", "/wp-admin/" + ThreadLocalRandom.current().nextInt());
+	}
+}
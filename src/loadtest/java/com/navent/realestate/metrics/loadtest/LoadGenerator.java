@@ -0,0 +1,203 @@
+package com.navent.realestate.metrics.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Generador de carga HTTP por loopback con {@link HttpURLConnection} y keep-alive, repartiendo los requests entre
+ * varios endpoints.
+ * <p>
+ * En lazo cerrado cada worker manda un request cuando termina el anterior, asi que mide el throughput maximo. En
+ * lazo abierto los requests salen a tasa fija aunque el server se atrase, y la latencia se mide desde el momento
+ * en que el request debia salir, sin omision coordinada. En los dos casos el warmup se descarta y la alocacion se
+ * mide sobre los threads de Tomcat ({@code http-nio-*}) para no contar la del generador.
+ */
+class LoadGenerator {
+	private static final String SERVER_THREAD_PREFIX = "http-nio-";
+
+	private final URL[] targets;
+	private final AtomicLong sequence = new AtomicLong();
+
+	LoadGenerator(int port) throws IOException {
+		String base = "http://127.0.0.1:" + port;
+		targets = new URL[] { new URL(base + "/v1/ads/1234"), new URL(base + "/v1/ads"),
+				new URL(base + "/v1/credits/5678"), new URL(base + "/health-check") };
+	}
+
+	LoadResult closedLoop(String metrics, int concurrency, long warmupSeconds, long durationSeconds)
+			throws InterruptedException {
+		Recorder recorder = new Recorder(3);
+		AtomicLong errors = new AtomicLong();
+		AtomicBoolean running = new AtomicBoolean(true);
+		List<Thread> workers = new ArrayList<>(concurrency);
+		for (int i = 0; i < concurrency; i++) {
+			Thread worker = new Thread(() -> {
+				while (running.get()) {
+					long start = System.nanoTime();
+					if (!send()) {
+						errors.incrementAndGet();
+					}
+					recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+				}
+			}, "loadtest-closed-" + i);
+			worker.setDaemon(true);
+			worker.start();
+			workers.add(worker);
+		}
+		Measurement measurement = measure(recorder, errors, warmupSeconds, durationSeconds);
+		running.set(false);
+		for (Thread worker : workers) {
+			worker.join(TimeUnit.SECONDS.toMillis(10));
+		}
+		return measurement.result(metrics, "closed", concurrency, 0);
+	}
+
+	/**
+	 * @param maxConcurrency threads que mandan requests; si el server no da abasto los requests esperan en cola y
+	 *            esa espera cuenta como latencia
+	 */
+	LoadResult openLoop(String metrics, double rate, int maxConcurrency, long warmupSeconds, long durationSeconds)
+			throws InterruptedException {
+		Recorder recorder = new Recorder(3);
+		AtomicLong errors = new AtomicLong();
+		AtomicBoolean running = new AtomicBoolean(true);
+		ExecutorService senders = Executors.newFixedThreadPool(maxConcurrency, r -> {
+			Thread thread = new Thread(r, "loadtest-open");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+		Thread pacer = new Thread(() -> {
+			long next = System.nanoTime();
+			while (running.get()) {
+				long intended = next;
+				senders.execute(() -> {
+					if (!send()) {
+						errors.incrementAndGet();
+					}
+					recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intended));
+				});
+				next += intervalNanos;
+				long wait = next - System.nanoTime();
+				if (wait > 0) {
+					LockSupport.parkNanos(wait);
+				}
+			}
+		}, "loadtest-pacer");
+		pacer.setDaemon(true);
+		pacer.start();
+
+		Measurement measurement = measure(recorder, errors, warmupSeconds, durationSeconds);
+		running.set(false);
+		pacer.join();
+		senders.shutdownNow();
+		senders.awaitTermination(10, TimeUnit.SECONDS);
+		return measurement.result(metrics, "open", maxConcurrency, rate);
+	}
+
+	private Measurement measure(Recorder recorder, AtomicLong errors, long warmupSeconds, long durationSeconds)
+			throws InterruptedException {
+		TimeUnit.SECONDS.sleep(warmupSeconds);
+		// descarta el warmup
+		recorder.getIntervalHistogram();
+		errors.set(0);
+		long allocatedStart = serverAllocatedBytes();
+		long gcCountStart = gcCount();
+		long gcMillisStart = gcMillis();
+		long start = System.nanoTime();
+
+		TimeUnit.SECONDS.sleep(durationSeconds);
+
+		Measurement measurement = new Measurement();
+		measurement.latencyMicros = recorder.getIntervalHistogram();
+		measurement.elapsedNanos = System.nanoTime() - start;
+		measurement.errors = errors.get();
+		measurement.allocatedBytes = serverAllocatedBytes() - allocatedStart;
+		measurement.gcCount = gcCount() - gcCountStart;
+		measurement.gcMillis = gcMillis() - gcMillisStart;
+		return measurement;
+	}
+
+	private boolean send() {
+		URL url = targets[(int) (sequence.getAndIncrement() % targets.length)];
+		try {
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			connection.setConnectTimeout(5000);
+			connection.setReadTimeout(30000);
+			int status = connection.getResponseCode();
+			InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+			if (body != null) {
+				// leer todo el cuerpo permite reusar la conexion
+				try (InputStream in = body) {
+					byte[] buffer = new byte[4096];
+					while (in.read(buffer) >= 0) {
+						// descartado
+					}
+				}
+			}
+			return status < 400;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private static long serverAllocatedBytes() {
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long total = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().startsWith(SERVER_THREAD_PREFIX)) {
+				long bytes = threadBean.getThreadAllocatedBytes(thread.getId());
+				if (bytes > 0) {
+					total += bytes;
+				}
+			}
+		}
+		return total;
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long gcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(0, gc.getCollectionTime());
+		}
+		return millis;
+	}
+
+	private static class Measurement {
+		Histogram latencyMicros;
+		long elapsedNanos;
+		long errors;
+		long allocatedBytes;
+		long gcCount;
+		long gcMillis;
+
+		LoadResult result(String metrics, String loop, int concurrency, double rate) {
+			return new LoadResult(metrics, loop, concurrency, rate, latencyMicros, errors, elapsedNanos,
+					allocatedBytes, gcCount, gcMillis);
+		}
+	}
+}
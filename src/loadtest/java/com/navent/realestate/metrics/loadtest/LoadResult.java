@@ -0,0 +1,111 @@
+package com.navent.realestate.metrics.loadtest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Resultado de una corrida de {@link LoadGenerator}, tal como se escribe en el reporte JSON. Las latencias estan en
+ * milisegundos y, en lazo abierto, se miden desde el momento en que el request debia salir.
+ */
+public class LoadResult {
+	private final String metrics;
+	private final String loop;
+	private final int concurrency;
+	private final double targetRate;
+	private final long requests;
+	private final long errors;
+	private final double seconds;
+	private final double throughput;
+	private final Map<String, Double> latencyMillis = new LinkedHashMap<>();
+	private final long serverAllocatedBytesPerRequest;
+	private final long gcCount;
+	private final long gcMillis;
+
+	LoadResult(String metrics, String loop, int concurrency, double targetRate, Histogram latencyMicros, long errors,
+			long elapsedNanos, long serverAllocatedBytes, long gcCount, long gcMillis) {
+		this.metrics = metrics;
+		this.loop = loop;
+		this.concurrency = concurrency;
+		this.targetRate = targetRate;
+		this.requests = latencyMicros.getTotalCount();
+		this.errors = errors;
+		this.seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+		this.throughput = requests / seconds;
+		latencyMillis.put("p50", millis(latencyMicros.getValueAtPercentile(50)));
+		latencyMillis.put("p90", millis(latencyMicros.getValueAtPercentile(90)));
+		latencyMillis.put("p99", millis(latencyMicros.getValueAtPercentile(99)));
+		latencyMillis.put("p999", millis(latencyMicros.getValueAtPercentile(99.9)));
+		latencyMillis.put("max", millis(latencyMicros.getMaxValue()));
+		latencyMillis.put("mean", latencyMicros.getMean() / 1000);
+		this.serverAllocatedBytesPerRequest = requests == 0 ? 0 : serverAllocatedBytes / requests;
+		this.gcCount = gcCount;
+		this.gcMillis = gcMillis;
+	}
+
+	private static double millis(long micros) {
+		return micros / 1000d;
+	}
+
+	/**
+	 * @return {@code on} u {@code off}
+	 */
+	public String getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return {@code closed} u {@code open}
+	 */
+	public String getLoop() {
+		return loop;
+	}
+
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	/**
+	 * @return requests por segundo pedidos en lazo abierto, 0 en lazo cerrado
+	 */
+	public double getTargetRate() {
+		return targetRate;
+	}
+
+	public long getRequests() {
+		return requests;
+	}
+
+	public long getErrors() {
+		return errors;
+	}
+
+	public double getSeconds() {
+		return seconds;
+	}
+
+	public double getThroughput() {
+		return throughput;
+	}
+
+	public Map<String, Double> getLatencyMillis() {
+		return latencyMillis;
+	}
+
+	/**
+	 * @return bytes alocados por los threads de Tomcat por request medido
+	 */
+	public long getServerAllocatedBytesPerRequest() {
+		return serverAllocatedBytesPerRequest;
+	}
+
+	public long getGcCount() {
+		return gcCount;
+	}
+
+	public long getGcMillis() {
+		return gcMillis;
+	}
+}
@@ -0,0 +1,81 @@
+package com.navent.realestate.metrics.loadtest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.navent.realestate.metrics.MetricsConfig;
+
+/**
+ * Aplicacion Boot minima para la prueba de carga: Tomcat embebido en un puerto libre, la libreria importada como la
+ * importan los servicios y un controller con mappings al estilo de los de listings.
+ * <p>
+ * Con metricas apagadas ({@code metrics.enabled=false}) queda solo el registry de micrometer; en los dos modos se
+ * apaga el filtro propio de micrometer para que la diferencia sea el costo de esta libreria.
+ */
+@Configuration
+@EnableAutoConfiguration
+@Import(MetricsConfig.class)
+public class LoadTestApplication {
+	static final String ENDPOINT_PATTERN = "/v1/.*";
+
+	/**
+	 * @param zabbixPort puerto del {@link ZabbixTrapperStub}, solo se usa con metricas
+	 */
+	static EmbeddedWebApplicationContext start(boolean metrics, int zabbixPort) {
+		Map<String, Object> properties = new HashMap<>();
+		properties.put("server.port", 0);
+		properties.put("server.tomcat.max-threads", 200);
+		properties.put("management.context-path", "/manage");
+		properties.put("management.security.enabled", false);
+		properties.put("management.metrics.web.server.auto-time-requests", false);
+		properties.put("management.metrics.export.jmx.enabled", true);
+		properties.put("logging.level.root", "WARN");
+		properties.put("metrics.enabled", metrics);
+		properties.put("metrics.endpoint.pattern", ENDPOINT_PATTERN);
+		properties.put("metrics.apdex.enabled", true);
+		properties.put("metrics.apdex.millis", 50);
+		properties.put("metrics.zabbix.serverHost", "127.0.0.1");
+		properties.put("metrics.zabbix.serverPort", zabbixPort);
+		properties.put("metrics.zabbix.trapper.enabled", true);
+		properties.put("metrics.zabbix.trapper.interval", 1);
+		properties.put("metrics.autoscaling.enabled", true);
+		properties.put("metrics.autoscaling.refreshInterval", 1);
+		return (EmbeddedWebApplicationContext) new SpringApplicationBuilder(LoadTestApplication.class)
+				.properties(properties)
+				.run();
+	}
+
+	@RestController
+	public static class AdsController {
+
+		@RequestMapping(path = "/v1/ads/{id}", method = RequestMethod.GET)
+		public String ad(@PathVariable String id) {
+			return "{\"id\":\"" + id + "\"}";
+		}
+
+		@RequestMapping(path = "/v1/ads", method = RequestMethod.GET)
+		public String ads() {
+			return "[]";
+		}
+
+		@RequestMapping(path = "/v1/credits/{account}", method = RequestMethod.GET)
+		public String credits(@PathVariable String account) {
+			return "{\"account\":\"" + account + "\"}";
+		}
+
+		@RequestMapping(path = "/health-check", method = RequestMethod.GET)
+		public String health() {
+			return "ok";
+		}
+	}
+}
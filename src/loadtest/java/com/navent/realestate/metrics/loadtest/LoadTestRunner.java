@@ -0,0 +1,185 @@
+package com.navent.realestate.metrics.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Prueba de carga de punta a punta: levanta {@link LoadTestApplication} sin metricas y con metricas, la carga en lazo
+ * cerrado y en lazo abierto con {@link LoadGenerator} y escribe un reporte JSON con cada corrida y la comparacion
+ * entre los dos modos. Con metricas, zabbix es un {@link ZabbixTrapperStub} y un thread scrapea
+ * {@code /manage/prometheus} y {@code /manage/autoscaling} cada segundo mientras dura la carga.
+ * <p>
+ * Opciones como {@code --clave=valor}: {@code duration} y {@code warmup} en segundos, {@code concurrency} para el lazo
+ * cerrado, {@code rate} en requests por segundo para el lazo abierto (0 toma el 70% del throughput sin metricas),
+ * {@code output} y los limites {@code maxThroughputDrop} (fraccion) y {@code maxP99IncreaseMillis}: si se superan el
+ * proceso termina con codigo 1, para usarlo como gate antes de actualizar la libreria.
+ */
+public class LoadTestRunner {
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = parse(args);
+		long duration = Long.parseLong(options.getOrDefault("duration", "30"));
+		long warmup = Long.parseLong(options.getOrDefault("warmup", "10"));
+		int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+		double rate = Double.parseDouble(options.getOrDefault("rate", "0"));
+		File output = new File(options.getOrDefault("output", "build/reports/loadtest/report.json"));
+		double maxThroughputDrop = Double.parseDouble(options.getOrDefault("maxThroughputDrop", "-1"));
+		double maxP99IncreaseMillis = Double.parseDouble(options.getOrDefault("maxP99IncreaseMillis", "-1"));
+
+		List<LoadResult> results = new ArrayList<>();
+		long zabbixPackets;
+		try (ZabbixTrapperStub zabbix = new ZabbixTrapperStub()) {
+			for (boolean metrics : new boolean[] { false, true }) {
+				String mode = metrics ? "on" : "off";
+				EmbeddedWebApplicationContext context = LoadTestApplication.start(metrics, zabbix.getPort());
+				Scraper scraper = null;
+				try {
+					int port = context.getEmbeddedServletContainer().getPort();
+					LoadGenerator generator = new LoadGenerator(port);
+					if (metrics) {
+						scraper = new Scraper(port);
+					}
+					LoadResult closed = generator.closedLoop(mode, concurrency, warmup, duration);
+					results.add(closed);
+					if (rate <= 0) {
+						// la tasa sale de la corrida sin metricas, que es la primera
+						rate = closed.getThroughput() * 0.7;
+					}
+					results.add(generator.openLoop(mode, rate, concurrency * 4, warmup, duration));
+				} finally {
+					if (scraper != null) {
+						scraper.stop();
+					}
+					context.close();
+				}
+			}
+			zabbixPackets = zabbix.getPackets();
+		}
+
+		Map<String, Object> comparison = new LinkedHashMap<>();
+		List<String> failures = new ArrayList<>();
+		for (String loop : new String[] { "closed", "open" }) {
+			LoadResult off = find(results, "off", loop);
+			LoadResult on = find(results, "on", loop);
+			double throughputDrop = off.getThroughput() == 0 ? 0
+					: (off.getThroughput() - on.getThroughput()) / off.getThroughput();
+			double p99Increase = on.getLatencyMillis().get("p99") - off.getLatencyMillis().get("p99");
+			Map<String, Object> entry = new LinkedHashMap<>();
+			entry.put("throughputDrop", throughputDrop);
+			entry.put("p99IncreaseMillis", p99Increase);
+			entry.put("allocatedBytesPerRequestIncrease",
+					on.getServerAllocatedBytesPerRequest() - off.getServerAllocatedBytesPerRequest());
+			comparison.put(loop, entry);
+			// el throughput del lazo abierto lo fija la tasa, solo el cerrado mide capacidad
+			if (maxThroughputDrop >= 0 && loop.equals("closed") && throughputDrop > maxThroughputDrop) {
+				failures.add(loop + " throughput dropped " + throughputDrop + ", max " + maxThroughputDrop);
+			}
+			if (maxP99IncreaseMillis >= 0 && p99Increase > maxP99IncreaseMillis) {
+				failures.add(loop + " p99 increased " + p99Increase + " ms, max " + maxP99IncreaseMillis);
+			}
+		}
+
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("javaVersion", System.getProperty("java.version"));
+		report.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+		report.put("warmupSeconds", warmup);
+		report.put("durationSeconds", duration);
+		report.put("zabbixPackets", zabbixPackets);
+		report.put("results", results);
+		report.put("comparison", comparison);
+		report.put("failures", failures);
+		File parent = output.getAbsoluteFile().getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Could not create " + parent);
+		}
+		new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(output, report);
+		System.out.println("Load test report written to " + output.getAbsolutePath());
+
+		if (!failures.isEmpty()) {
+			failures.forEach(System.err::println);
+			System.exit(1);
+		}
+		System.exit(0);
+	}
+
+	private static LoadResult find(List<LoadResult> results, String metrics, String loop) {
+		return results.stream().filter(r -> r.getMetrics().equals(metrics) && r.getLoop().equals(loop)).findFirst()
+				.orElseThrow(() -> new IllegalStateException("No " + metrics + "/" + loop + " result"));
+	}
+
+	private static Map<String, String> parse(String[] args) {
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			if (!arg.startsWith("--") || !arg.contains("=")) {
+				throw new IllegalArgumentException("Expected --option=value, got " + arg);
+			}
+			int equals = arg.indexOf('=');
+			options.put(arg.substring(2, equals), arg.substring(equals + 1));
+		}
+		return options;
+	}
+
+	/**
+	 * Scrapea los endpoints de metricas cada segundo, como prometheus y el autoescalado en produccion.
+	 */
+	private static class Scraper {
+		private final AtomicBoolean running = new AtomicBoolean(true);
+		private final Thread thread;
+
+		Scraper(int port) throws IOException {
+			URL[] urls = { new URL("http://127.0.0.1:" + port + "/manage/prometheus"),
+					new URL("http://127.0.0.1:" + port + "/manage/autoscaling") };
+			thread = new Thread(() -> {
+				while (running.get()) {
+					for (URL url : urls) {
+						scrape(url);
+					}
+					try {
+						Thread.sleep(1000);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}, "loadtest-scraper");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		private void scrape(URL url) {
+			try {
+				HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+				InputStream body = connection.getResponseCode() < 400 ? connection.getInputStream()
+						: connection.getErrorStream();
+				if (body != null) {
+					try (InputStream in = body) {
+						byte[] buffer = new byte[8192];
+						while (in.read(buffer) >= 0) {
+							// descartado
+						}
+					}
+				}
+			} catch (IOException e) {
+				// un scrape fallido no corta la prueba
+			}
+		}
+
+		void stop() throws InterruptedException {
+			running.set(false);
+			thread.interrupt();
+			thread.join();
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.navent.realestate.metrics.loadtest;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server de zabbix de mentira en loopback: contesta {@code success} a los envios del trapper y una lista vacia de
+ * checks al agente activo, asi los exportadores trabajan durante la prueba igual que en produccion.
+ */
+class ZabbixTrapperStub implements AutoCloseable {
+	private static final byte[] HEADER = { 'Z', 'B', 'X', 'D', 1 };
+	private static final int HEADER_LENGTH = HEADER.length + Long.BYTES;
+
+	private final ServerSocket serverSocket;
+	private final AtomicLong packets = new AtomicLong();
+
+	ZabbixTrapperStub() throws IOException {
+		serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		Thread thread = new Thread(this::accept, "zabbix-trapper-stub");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	long getPackets() {
+		return packets.get();
+	}
+
+	private void accept() {
+		while (!serverSocket.isClosed()) {
+			try (Socket socket = serverSocket.accept()) {
+				answer(socket);
+			} catch (IOException e) {
+				// conexion cortada por el cliente o server cerrado
+			}
+		}
+	}
+
+	private void answer(Socket socket) throws IOException {
+		DataInputStream in = new DataInputStream(socket.getInputStream());
+		byte[] header = new byte[HEADER_LENGTH];
+		in.readFully(header);
+		long length = ByteBuffer.wrap(header, HEADER.length, Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).getLong();
+		byte[] body = new byte[(int) length];
+		in.readFully(body);
+		packets.incrementAndGet();
+
+		String request = new String(body, StandardCharsets.UTF_8);
+		String response = request.contains("\"active checks\"") ? "{\"response\":\"success\",\"data\":[]}"
+				: "{\"response\":\"success\",\"info\":\"processed: 0; failed: 0; total: 0; seconds spent: 0\"}";
+		byte[] payload = response.getBytes(StandardCharsets.UTF_8);
+		OutputStream out = socket.getOutputStream();
+		out.write(ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN)
+				.put(HEADER)
+				.putLong(payload.length)
+				.array());
+		out.write(payload);
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+	}
+}
@@ -0,0 +1,157 @@
+package com.navent.realestate.metrics;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.navent.realestate.metrics.NaventMetricsProperties.Concurrency;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+
+/**
+ * Limite de requests concurrentes que se ajusta solo, con el algoritmo de gradiente: compara la latencia promedio
+ * de la ultima ventana de requests contra un promedio de largo plazo. Si la latencia sube el limite baja en la misma
+ * proporcion (hasta la mitad por ventana), si se mantiene crece de a {@code sqrt(limite)}. Solo los requests sin
+ * error aportan latencia, y no se agranda el limite si la app no lo esta usando.
+ * <p>
+ * Los requests con error (incluidos los timeouts async) son la senal de descarte: si en una ventana superan
+ * errorThreshold el limite se multiplica por backoffRatio aunque la latencia no haya subido, como en AIMD. Tampoco
+ * se achica si la app no esta usando el limite, porque entonces los errores no vienen de la concurrencia.
+ * <p>
+ * Publica {@code <prefijo>.concurrency.limit}, {@code .concurrency.in.flight} y {@code .concurrency.rejected}.
+ */
+class AdaptiveConcurrencyLimit {
+	// ventanas que pesa el promedio de largo plazo
+	private static final int LONG_WINDOWS = 20;
+	private static final double LONG_ALPHA = 2d / (LONG_WINDOWS + 1);
+	private static final double MIN_GRADIENT = 0.5;
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final int windowSize;
+	private final double smoothing;
+	private final double rttTolerance;
+	private final double backoffRatio;
+	private final double errorThreshold;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final LongAdder windowRttSum = new LongAdder();
+	private final AtomicInteger windowCount = new AtomicInteger();
+	private final LongAdder windowErrors = new LongAdder();
+	private final AtomicBoolean updating = new AtomicBoolean();
+	private final Counter rejected;
+
+	// escritos solo por el thread que gana updating
+	private volatile double estimatedLimit;
+	private volatile int limit;
+	private double longRtt;
+
+	/**
+	 * @param maxLimit limite maximo de este endpoint o de la app
+	 */
+	AdaptiveConcurrencyLimit(MeterRegistry registry, String prefix, Iterable<Tag> tags, Concurrency concurrency,
+			int maxLimit) {
+		this.minLimit = Math.min(concurrency.getMinLimit(), maxLimit);
+		this.maxLimit = maxLimit;
+		this.windowSize = concurrency.getWindowSize();
+		this.smoothing = concurrency.getSmoothing();
+		this.rttTolerance = concurrency.getRttTolerance();
+		this.backoffRatio = concurrency.getBackoffRatio();
+		this.errorThreshold = concurrency.getErrorThreshold();
+		this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, concurrency.getInitialLimit()));
+		this.limit = (int) estimatedLimit;
+
+		Gauge.builder(prefix + ".concurrency.limit", this, AdaptiveConcurrencyLimit::getLimit).tags(tags)
+				.description("Current adaptive concurrency limit").register(registry);
+		Gauge.builder(prefix + ".concurrency.in.flight", inFlight, AtomicInteger::get).tags(tags)
+				.description("Requests holding a concurrency permit").register(registry);
+		rejected = Counter.builder(prefix + ".concurrency.rejected").tags(tags)
+				.description("Requests rejected by the concurrency limit").register(registry);
+	}
+
+	/**
+	 * @return true si el request entra en el limite; en ese caso hay que llamar a {@link #release(long, boolean)} o
+	 *         a {@link #cancel()}
+	 */
+	boolean tryAcquire() {
+		if (inFlight.incrementAndGet() > limit) {
+			inFlight.decrementAndGet();
+			rejected.increment();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param rttNanos duracion del request
+	 * @param ok false si termino con error: no aporta latencia y cuenta como descarte
+	 */
+	void release(long rttNanos, boolean ok) {
+		int current = inFlight.getAndDecrement();
+		if (ok) {
+			windowRttSum.add(rttNanos);
+		} else {
+			windowErrors.increment();
+		}
+		if (windowCount.incrementAndGet() >= windowSize && updating.compareAndSet(false, true)) {
+			try {
+				int count = windowCount.getAndSet(0);
+				int errors = (int) windowErrors.sumThenReset();
+				long sum = windowRttSum.sumThenReset();
+				if (count > 0) {
+					update(count > errors ? (double) sum / (count - errors) : 0, (double) errors / count, current);
+				}
+			} finally {
+				updating.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Devuelve el lugar de un request que no llego a procesarse (por ejemplo lo rechazo el limite del endpoint), sin
+	 * aportar latencia ni errores.
+	 */
+	void cancel() {
+		inFlight.decrementAndGet();
+	}
+
+	/**
+	 * @param shortRtt latencia promedio de los requests sin error de la ventana, 0 si todos fallaron
+	 */
+	private void update(double shortRtt, double errorRatio, int inFlightAtSample) {
+		if (shortRtt > 0) {
+			longRtt = longRtt == 0 ? shortRtt : longRtt * (1 - LONG_ALPHA) + shortRtt * LONG_ALPHA;
+			if (longRtt / shortRtt > 2) {
+				// la latencia bajo mucho (por ejemplo termino un deploy), el largo plazo la alcanza mas rapido
+				longRtt *= 0.95;
+			}
+		}
+		double current = estimatedLimit;
+		if (inFlightAtSample < current / 2) {
+			return;
+		}
+		double next;
+		if (errorRatio > errorThreshold) {
+			next = current * backoffRatio;
+		} else if (shortRtt > 0) {
+			double gradient = Math.max(MIN_GRADIENT, Math.min(1d, rttTolerance * longRtt / shortRtt));
+			next = current * gradient + Math.sqrt(current);
+			next = current * (1 - smoothing) + next * smoothing;
+		} else {
+			return;
+		}
+		estimatedLimit = Math.max(minLimit, Math.min(maxLimit, next));
+		limit = (int) estimatedLimit;
+	}
+
+	int getLimit() {
+		return limit;
+	}
+
+	int getInFlight() {
+		return inFlight.get();
+	}
+}
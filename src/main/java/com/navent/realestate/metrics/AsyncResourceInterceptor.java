@@ -0,0 +1,78 @@
+package com.navent.realestate.metrics;
+
+import java.util.concurrent.Callable;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.CallableProcessingInterceptorAdapter;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.DeferredResultProcessingInterceptorAdapter;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+
+/**
+ * Extiende la medicion de recursos de un request async mas alla del dispatch inicial. Un {@code Callable} corre en
+ * el executor de Spring, asi que su tramo se abre y se cierra alrededor de la tarea. Un {@code DeferredResult} (y
+ * los emitters que lo usan) se completa desde threads de la app que no se pueden acotar: el request se marca como
+ * parcial.
+ */
+final class AsyncResourceInterceptor {
+	private static final Object KEY = AsyncResourceInterceptor.class.getName();
+
+	private AsyncResourceInterceptor() {
+	}
+
+	/**
+	 * Registra los interceptors en el {@link WebAsyncManager} del request, solo para los requests que miden
+	 * recursos.
+	 */
+	static void register(HttpServletRequest request, RequestMetricsRecorder recorder, RequestTiming timing) {
+		WebAsyncManager asyncManager = WebAsyncUtils.getAsyncManager(request);
+		asyncManager.registerCallableInterceptor(KEY, new CallableResources(recorder, timing));
+		asyncManager.registerDeferredResultInterceptor(KEY, new DeferredResultResources(recorder, timing));
+	}
+
+	private static final class CallableResources extends CallableProcessingInterceptorAdapter {
+		private final RequestMetricsRecorder recorder;
+		private final RequestTiming timing;
+
+		CallableResources(RequestMetricsRecorder recorder, RequestTiming timing) {
+			this.recorder = recorder;
+			this.timing = timing;
+		}
+
+		@Override
+		public <T> void preProcess(NativeWebRequest request, Callable<T> task) {
+			recorder.resumeAsync(timing);
+		}
+
+		@Override
+		public <T> void postProcess(NativeWebRequest request, Callable<T> task, Object concurrentResult) {
+			recorder.suspendAsync(timing);
+		}
+
+		@Override
+		public <T> Object handleTimeout(NativeWebRequest request, Callable<T> task) {
+			// la tarea puede seguir corriendo despues de que se registra el request
+			recorder.resourcesPartial(timing);
+			return CallableProcessingInterceptor.RESULT_NONE;
+		}
+	}
+
+	private static final class DeferredResultResources extends DeferredResultProcessingInterceptorAdapter {
+		private final RequestMetricsRecorder recorder;
+		private final RequestTiming timing;
+
+		DeferredResultResources(RequestMetricsRecorder recorder, RequestTiming timing) {
+			this.recorder = recorder;
+			this.timing = timing;
+		}
+
+		@Override
+		public <T> void beforeConcurrentHandling(NativeWebRequest request, DeferredResult<T> deferredResult) {
+			recorder.resourcesPartial(timing);
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package com.navent.realestate.metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.config.NamingConvention;
+import io.micrometer.prometheus.PrometheusNamingConvention;
+
+/**
+ * Arma en segundo plano, a partir de la {@link MetricsSnapshot}, el texto en formato Prometheus de una lista acotada
+ * de metricas (las que usa el autoescalado de pods) y lo deja listo en bytes, plano y en gzip, junto con su ETag.
+ * Cada scrape solo copia esos bytes, sin importar cuantos otros meters tenga el registry.
+ */
+public class AutoscalingMetricsRenderer implements MetricsSink {
+	private final Set<String> signals;
+	private final int refreshInterval;
+	private final NamingConvention namingConvention = new PrometheusNamingConvention();
+
+	private volatile Rendered rendered = new Rendered(new byte[0], new byte[0], "\"0\"");
+
+	/**
+	 * @param signals nombres de los meters a exponer, como se registran en micrometer
+	 * @param refreshInterval segundos entre cada actualizacion
+	 */
+	public AutoscalingMetricsRenderer(List<String> signals, int refreshInterval) {
+		this.signals = new HashSet<>(signals);
+		this.refreshInterval = refreshInterval;
+	}
+
+	@Override
+	public String getName() {
+		return "autoscaling";
+	}
+
+	@Override
+	public int getInterval() {
+		return refreshInterval;
+	}
+
+	Rendered getRendered() {
+		return rendered;
+	}
+
+	@Override
+	public void export(MetricsSnapshot snapshot) throws IOException {
+		byte[] plain = render(snapshot).getBytes(StandardCharsets.UTF_8);
+		rendered = new Rendered(plain, gzip(plain), etag(plain));
+	}
+
+	private String render(MetricsSnapshot snapshot) {
+		// el formato pide las lineas de una misma metrica juntas, y la foto no las trae ordenadas por nombre
+		Map<String, StringBuilder> families = new LinkedHashMap<>();
+		Meter.Id lastId = null;
+		for (MetricsSnapshot.Entry entry : snapshot.getEntries()) {
+			Meter.Id id = entry.getId();
+			// los meters del allow-list son counters y gauges, se toma solo la primera measurement
+			if (id == lastId || !signals.contains(id.getName())) {
+				continue;
+			}
+			lastId = id;
+			String name = namingConvention.name(id.getName(), id.getType(), id.getBaseUnit());
+			StringBuilder text = families.computeIfAbsent(name, family -> new StringBuilder(128).append("# TYPE ")
+					.append(family).append(' ').append(prometheusType(id.getType())).append('\n'));
+			text.append(name);
+			appendLabels(text, id.getTags());
+			text.append(' ').append(entry.getValue()).append('\n');
+		}
+		StringBuilder text = new StringBuilder(256);
+		families.values().forEach(text::append);
+		return text.toString();
+	}
+
+	private void appendLabels(StringBuilder text, List<Tag> tags) {
+		if (tags.isEmpty()) {
+			return;
+		}
+		text.append('{');
+		boolean first = true;
+		for (Tag tag : tags) {
+			if (!first) {
+				text.append(',');
+			}
+			first = false;
+			text.append(namingConvention.tagKey(tag.getKey())).append("=\"")
+					.append(tag.getValue().replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+					.append('"');
+		}
+		text.append('}');
+	}
+
+	private static String prometheusType(Meter.Type type) {
+		switch (type) {
+		case COUNTER:
+			return "counter";
+		case GAUGE:
+			return "gauge";
+		default:
+			return "untyped";
+		}
+	}
+
+	private static byte[] gzip(byte[] plain) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(plain.length / 2 + 32);
+		try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+			out.write(plain);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static String etag(byte[] plain) {
+		CRC32 crc = new CRC32();
+		crc.update(plain);
+		return "\"" + Long.toHexString(crc.getValue()) + "\"";
+	}
+
+	static class Rendered {
+		final byte[] plain;
+		final byte[] gzip;
+		final String etag;
+
+		Rendered(byte[] plain, byte[] gzip, String etag) {
+			this.plain = plain;
+			this.gzip = gzip;
+			this.etag = etag;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package com.navent.realestate.metrics;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Expone lo que deja armado {@link AutoscalingMetricsRenderer}, con soporte de {@code If-None-Match} y gzip. Con un
+ * registry mide cada scrape en {@code metrics.scrape{endpoint=autoscaling}}.
+ */
+public class AutoscalingMetricsServlet extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final transient AutoscalingMetricsRenderer renderer;
+	private final transient Timer scrapeTimer;
+
+	public AutoscalingMetricsServlet(AutoscalingMetricsRenderer renderer) {
+		this.renderer = renderer;
+		this.scrapeTimer = null;
+	}
+
+	public AutoscalingMetricsServlet(AutoscalingMetricsRenderer renderer, MeterRegistry registry) {
+		this.renderer = renderer;
+		this.scrapeTimer = Timer.builder("metrics.scrape").tag("endpoint", "autoscaling")
+				.description("Time to answer a scrape of the autoscaling endpoint").register(registry);
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		if (scrapeTimer == null) {
+			serve(request, response);
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			serve(request, response);
+		} finally {
+			scrapeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private void serve(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		AutoscalingMetricsRenderer.Rendered rendered = renderer.getRendered();
+		response.setHeader("ETag", rendered.etag);
+		response.setHeader("Cache-Control", "no-cache");
+		response.setHeader("Vary", "Accept-Encoding");
+
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (ifNoneMatch != null && ifNoneMatch.contains(rendered.etag)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		byte[] body = rendered.plain;
+		String acceptEncoding = request.getHeader("Accept-Encoding");
+		if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+			body = rendered.gzip;
+			response.setHeader("Content-Encoding", "gzip");
+		}
+		response.setStatus(HttpServletResponse.SC_OK);
+		response.setContentType(CONTENT_TYPE);
+		response.setContentLength(body.length);
+		response.getOutputStream().write(body);
+	}
+}
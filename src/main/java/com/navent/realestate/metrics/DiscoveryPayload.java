@@ -0,0 +1,56 @@
+package com.navent.realestate.metrics;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.quigley.zabbixj.metrics.MetricsException;
+
+/**
+ * JSON de low level discovery ({@code {"data":[...]}}) ya serializado. Se vuelve a armar solo cuando cambia la
+ * generacion de la fuente; el resto de los polls devuelven el mismo String publicado en un campo volatile.
+ */
+class DiscoveryPayload {
+	private final ObjectMapper mapper = new ObjectMapper();
+	private volatile Snapshot snapshot = new Snapshot(-1, null);
+
+	/**
+	 * @param generation generacion actual de la fuente, leida antes que los datos
+	 * @param entries arma las entradas del discovery, solo se invoca si la generacion cambio
+	 */
+	String get(long generation, Supplier<List<Map<String, Object>>> entries) throws MetricsException {
+		Snapshot current = snapshot;
+		if (current.generation == generation) {
+			return current.json;
+		}
+		synchronized (this) {
+			current = snapshot;
+			if (current.generation != generation) {
+				current = new Snapshot(generation, serialize(entries.get()));
+				snapshot = current;
+			}
+		}
+		return current.json;
+	}
+
+	private String serialize(List<Map<String, Object>> entries) throws MetricsException {
+		try {
+			return mapper.writeValueAsString(Collections.singletonMap("data", entries));
+		} catch (JsonProcessingException e) {
+			throw new MetricsException(e);
+		}
+	}
+
+	private static class Snapshot {
+		private final long generation;
+		private final String json;
+
+		Snapshot(long generation, String json) {
+			this.generation = generation;
+			this.json = json;
+		}
+	}
+}
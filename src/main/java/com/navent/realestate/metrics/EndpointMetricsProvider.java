@@ -1,9 +1,12 @@
 package com.navent.realestate.metrics;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -15,8 +18,6 @@ import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
 import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.quigley.zabbixj.metrics.MetricsException;
 import com.quigley.zabbixj.metrics.MetricsKey;
 import com.quigley.zabbixj.metrics.MetricsProvider;
@@ -24,10 +25,20 @@ import com.quigley.zabbixj.metrics.MetricsProvider;
 import io.micrometer.jmx.JmxConfig;
 import lombok.val;
 
+/**
+ * Informa a zabbix los endpoints que cumplen {@code metrics.endpoint.pattern}.
+ * <p>
+ * El refresh del contexto solo guarda el contexto: los mappings se recorren recien cuando el agente pide el
+ * discovery, en su propio thread, asi el arranque no paga el recorrido. La lista se reemplaza entera y se publica en
+ * un campo volatile, asi el thread del agente nunca ve una lista a medio armar. El JSON del discovery se arma solo
+ * cuando la lista cambia.
+ */
 public class EndpointMetricsProvider implements MetricsProvider {
 
-	private List<Pair<String, String>> endpoints = new LinkedList<>();
-	private ObjectMapper mapper = new ObjectMapper();
+	private volatile List<Pair<String, String>> endpoints = Collections.emptyList();
+	private final AtomicReference<ApplicationContext> pendingContext = new AtomicReference<>();
+	private final AtomicLong generation = new AtomicLong();
+	private final DiscoveryPayload discovery = new DiscoveryPayload();
 	private Pattern pattern;
 
 	public EndpointMetricsProvider(JmxConfig config, NaventMetricsProperties metricsProperties) {
@@ -36,35 +47,47 @@ public class EndpointMetricsProvider implements MetricsProvider {
 
 	@EventListener
 	public void handleContextRefresh(ContextRefreshedEvent event) {
-		ApplicationContext applicationContext = ((ContextRefreshedEvent) event).getApplicationContext();
+		pendingContext.set(event.getApplicationContext());
+	}
+
+	@Override
+	public Object getValue(MetricsKey key) throws MetricsException {
+		if ("discovery".equals(key.getKey())) {
+			ApplicationContext applicationContext = pendingContext.get();
+			if (applicationContext != null) {
+				refresh(applicationContext);
+				// si refresh falla el contexto queda pendiente para el proximo discovery; si llego otro mientras
+				// tanto, tambien
+				pendingContext.compareAndSet(applicationContext, null);
+			}
+			return discovery.get(generation.get(), this::entries);
+		}
+		return null;
+	}
+
+	private void refresh(ApplicationContext applicationContext) {
 		Map<RequestMappingInfo, HandlerMethod> handlerMethods = applicationContext
 				.getBean(RequestMappingHandlerMapping.class).getHandlerMethods();
-		endpoints.clear();
+		List<Pair<String, String>> matching = new ArrayList<>();
 		handlerMethods.entrySet().forEach(h -> {
 			String uri = h.getKey().getPatternsCondition().getPatterns().iterator().next();
 			if (pattern.matcher(uri).matches()) {
 				String method = h.getKey().getMethodsCondition().getMethods().iterator().next().toString();
-				endpoints.add(Pair.of(uri, method));
+				matching.add(Pair.of(uri, method));
 			}
 		});
+		if (!matching.equals(endpoints)) {
+			endpoints = Collections.unmodifiableList(matching);
+			generation.incrementAndGet();
+		}
 	}
 
-	@Override
-	public Object getValue(MetricsKey key) throws MetricsException {
-		if ("discovery".equals(key.getKey())) {
-			Map<String, List<Map<String, Object>>> values = new HashMap<>();
-			values.put("data", endpoints.stream().map(e -> {
-				val entry = new HashMap<String, Object>(2);
-				entry.put("{#ENDPOINTNAME}", e.getKey());
-				entry.put("{#ENDPOINTMETHOD}", e.getValue());
-				return entry;
-			}).collect(Collectors.toList()));
-			try {
-				return mapper.writeValueAsString(values);
-			} catch (JsonProcessingException e1) {
-				throw new MetricsException(e1);
-			}
-		}
-		return null;
+	private List<Map<String, Object>> entries() {
+		return endpoints.stream().map(e -> {
+			val entry = new HashMap<String, Object>(2);
+			entry.put("{#ENDPOINTNAME}", e.getKey());
+			entry.put("{#ENDPOINTMETHOD}", e.getValue());
+			return (Map<String, Object>) entry;
+		}).collect(Collectors.toList());
 	}
 }
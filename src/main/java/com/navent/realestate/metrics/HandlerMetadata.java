@@ -0,0 +1,103 @@
+package com.navent.realestate.metrics;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.LongTaskTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.spring.web.servlet.WebMvcTagsProvider;
+
+/**
+ * Datos de un handler resueltos una sola vez al refrescar el contexto: las anotaciones {@link Timed}, los tags
+ * del endpoint, los {@link LongTaskTimer} ya registrados y, si el endpoint cae en {@code metrics.endpoint.pattern},
+ * sus contadores de ventana, su limite de concurrencia de {@code metrics.concurrency.endpoints} y, con
+ * {@code metrics.resources}, los summaries de bytes alocados y CPU.
+ * <p>
+ * Cuando el mapping acepta mas de un patron o metodo HTTP la tabla arma una metadata por metodo y patron. Si el
+ * request no trae el patron los tags quedan sin resolver, y los long task timers se siguen registrando por request
+ * con el {@link WebMvcTagsProvider}.
+ */
+class HandlerMetadata {
+	private static final LongTaskTimer.Sample[] NO_SAMPLES = new LongTaskTimer.Sample[0];
+
+	private final Set<Timed> timedAnnotations;
+	private final Tags tags;
+	private final LongTaskTimer[] longTaskTimers;
+	private final RequestWindowMetrics endpointMetrics;
+	private final AdaptiveConcurrencyLimit concurrencyLimit;
+	private final ResourceUsageSummaries resourceUsage;
+
+	HandlerMetadata(Set<Timed> timedAnnotations, Tags tags, List<LongTaskTimer> longTaskTimers,
+			RequestWindowMetrics endpointMetrics, AdaptiveConcurrencyLimit concurrencyLimit,
+			ResourceUsageSummaries resourceUsage) {
+		this.timedAnnotations = Collections.unmodifiableSet(timedAnnotations);
+		this.tags = tags;
+		this.longTaskTimers = longTaskTimers.toArray(new LongTaskTimer[0]);
+		this.endpointMetrics = endpointMetrics;
+		this.concurrencyLimit = concurrencyLimit;
+		this.resourceUsage = resourceUsage;
+	}
+
+	Set<Timed> getTimedAnnotations() {
+		return timedAnnotations;
+	}
+
+	/**
+	 * @return los tags {@code method} y {@code uri} del endpoint, o null si dependen del request
+	 */
+	Tags getTags() {
+		return tags;
+	}
+
+	/**
+	 * @return los contadores de ventana del endpoint, o null si no se mide por endpoint
+	 */
+	RequestWindowMetrics getEndpointMetrics() {
+		return endpointMetrics;
+	}
+
+	/**
+	 * @return el limite de concurrencia propio del endpoint, o null si no tiene
+	 */
+	AdaptiveConcurrencyLimit getConcurrencyLimit() {
+		return concurrencyLimit;
+	}
+
+	/**
+	 * @return los summaries de recursos del endpoint, o null si no se miden
+	 */
+	ResourceUsageSummaries getResourceUsage() {
+		return resourceUsage;
+	}
+
+	/**
+	 * Micrometer no acepta long task timers sin nombre; la tabla los avisa una vez al armarse y por request se
+	 * ignoran.
+	 */
+	static boolean isNamedLongTask(Timed timed) {
+		return timed.longTask() && !timed.value().isEmpty();
+	}
+
+	LongTaskTimer.Sample[] startLongTaskTimers(HttpServletRequest request, Object handler, MeterRegistry registry,
+			WebMvcTagsProvider tagsProvider) {
+		if (tags != null) {
+			if (longTaskTimers.length == 0) {
+				return NO_SAMPLES;
+			}
+			LongTaskTimer.Sample[] samples = new LongTaskTimer.Sample[longTaskTimers.length];
+			for (int i = 0; i < longTaskTimers.length; i++) {
+				samples[i] = longTaskTimers[i].start();
+			}
+			return samples;
+		}
+		return timedAnnotations.stream().filter(HandlerMetadata::isNamedLongTask)
+				.map(t -> LongTaskTimer.builder(t).tags(tagsProvider.httpLongRequestTags(request, handler))
+						.register(registry).start())
+				.toArray(LongTaskTimer.Sample[]::new);
+	}
+}
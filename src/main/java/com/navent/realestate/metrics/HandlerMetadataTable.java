@@ -0,0 +1,227 @@
+package com.navent.realestate.metrics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import com.navent.realestate.metrics.NaventMetricsProperties.Apdex;
+import com.navent.realestate.metrics.NaventMetricsProperties.Concurrency;
+import com.navent.realestate.metrics.NaventMetricsProperties.RollingLatency;
+
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.LongTaskTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.spring.TimedUtils;
+
+/**
+ * Tabla inmutable de {@link HandlerMetadata} por handler, armada al refrescar el contexto a partir de los
+ * {@link RequestMappingHandlerMapping}. En el request solo queda una busqueda en un mapa, sin reflection ni
+ * accesos al registry.
+ * <p>
+ * Los endpoints que cumplen {@code metrics.endpoint.pattern} tienen ademas sus propios contadores de ventana
+ * ({@code <metricName>.uri.endpoint.*} con tags {@code method} y {@code uri}), con el umbral de apdex de
+ * {@code metrics.apdex.endpoints} o el de la app.
+ * <p>
+ * La clave es el {@link HandlerMethod} con el bean ya resuelto, igual a la copia que entrega el DispatcherServlet en
+ * cada request: el mismo metodo en dos beans (por ejemplo una clase base con dos subclases mapeadas en paths
+ * distintos) tiene una entrada para cada uno. Los beans que no son singleton no se resuelven al refrescar, sus
+ * handlers no se encuentran y se miden por request.
+ * <p>
+ * Un mapping con mas de un patron o metodo HTTP (o sin metodo) tiene una metadata por metodo y patron, creada la
+ * primera vez que llega un request con el patron que eligio el handler mapping
+ * ({@link org.springframework.web.servlet.HandlerMapping#BEST_MATCHING_PATTERN_ATTRIBUTE}) y uno de los metodos
+ * de {@link HttpMethod}. Los patrones y metodos posibles son finitos, asi que la cantidad de meters tambien.
+ */
+public class HandlerMetadataTable {
+	private static final Log logger = LogFactory.getLog(HandlerMetadataTable.class);
+
+	// los contadores por endpoint usan menos stripes que los de la app: son muchos y cada uno recibe menos trafico
+	private static final int ENDPOINT_STRIPES = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+	private final MeterRegistry registry;
+	private final String metricName;
+	private final Pattern endpointPattern;
+	private final Apdex apdex;
+	private final RollingLatency rollingLatency;
+	private final Concurrency concurrency;
+	private final ThreadResourceSampler resourceSampler;
+	private volatile Map<HandlerMethod, HandlerMetadata> handlers = Collections.emptyMap();
+	private volatile Map<HandlerMethod, RequestMappings> mappings = Collections.emptyMap();
+
+	public HandlerMetadataTable(MeterRegistry registry, String metricName, NaventMetricsProperties metricsProperties) {
+		this.registry = registry;
+		this.metricName = metricName;
+		String pattern = metricsProperties == null ? null : metricsProperties.getEndpoint().getPattern();
+		this.endpointPattern = pattern == null ? null : Pattern.compile(pattern);
+		this.apdex = metricsProperties == null ? new Apdex() : metricsProperties.getApdex();
+		this.rollingLatency = metricsProperties == null || !metricsProperties.getRollingLatency().isEnabled() ? null
+				: metricsProperties.getRollingLatency();
+		this.concurrency = metricsProperties == null || !metricsProperties.getConcurrency().isEnabled() ? null
+				: metricsProperties.getConcurrency();
+		this.resourceSampler = metricsProperties == null ? null
+				: ThreadResourceSampler.create(metricsProperties.getResources());
+	}
+
+	@EventListener
+	public void handleContextRefresh(ContextRefreshedEvent event) {
+		refresh(event.getApplicationContext());
+	}
+
+	/**
+	 * Agrega los handlers de los {@link RequestMappingHandlerMapping} del contexto. Los que ya estaban en la tabla
+	 * conservan su metadata, asi un contexto hijo (por ejemplo el de management) no pisa los del padre.
+	 */
+	public void refresh(ApplicationContext applicationContext) {
+		Map<HandlerMethod, HandlerMetadata> table = new HashMap<>(handlers);
+		Map<HandlerMethod, RequestMappings> perRequest = new HashMap<>(mappings);
+		applicationContext.getBeansOfType(RequestMappingHandlerMapping.class).values()
+				.forEach(mapping -> mapping.getHandlerMethods().forEach((info, handlerMethod) -> {
+					HandlerMethod key = resolve(mapping.getApplicationContext(), handlerMethod);
+					if (table.containsKey(key) || perRequest.containsKey(key)) {
+						return;
+					}
+					Set<Timed> timed = timed(handlerMethod);
+					Tags tags = tags(info);
+					if (tags != null) {
+						String uri = info.getPatternsCondition().getPatterns().iterator().next();
+						table.put(key, create(timed, tags, uri));
+					} else {
+						perRequest.put(key, new RequestMappings(timed));
+					}
+				}));
+		handlers = Collections.unmodifiableMap(table);
+		mappings = Collections.unmodifiableMap(perRequest);
+	}
+
+	private static HandlerMethod resolve(ApplicationContext applicationContext, HandlerMethod handlerMethod) {
+		Object bean = handlerMethod.getBean();
+		if (bean instanceof String && applicationContext.isSingleton((String) bean)) {
+			return handlerMethod.createWithResolvedBean();
+		}
+		return handlerMethod;
+	}
+
+	/**
+	 * @param method metodo HTTP del request
+	 * @param pattern patron que eligio el handler mapping, null si no lo dejo en el request
+	 * @return la metadata del handler, o null si no es un {@link HandlerMethod} conocido
+	 */
+	HandlerMetadata get(Object handler, String method, String pattern) {
+		if (!(handler instanceof HandlerMethod)) {
+			return null;
+		}
+		HandlerMetadata metadata = handlers.get(handler);
+		if (metadata != null) {
+			return metadata;
+		}
+		RequestMappings perRequest = mappings.get(handler);
+		return perRequest == null ? null : perRequest.get(method, pattern);
+	}
+
+	private static Set<Timed> timed(HandlerMethod handlerMethod) {
+		Set<Timed> timed = TimedUtils.findTimedAnnotations(handlerMethod.getMethod());
+		if (timed.isEmpty()) {
+			timed = TimedUtils.findTimedAnnotations(handlerMethod.getBeanType());
+		}
+		for (Timed t : timed) {
+			if (t.longTask() && t.value().isEmpty()) {
+				logger.warn("Ignoring unnamed long task @Timed on " + handlerMethod);
+			}
+		}
+		return timed;
+	}
+
+	/**
+	 * @param tags null si dependen del request y no se pueden resolver: se miden por request con el
+	 *            {@link io.micrometer.spring.web.servlet.WebMvcTagsProvider}
+	 */
+	private HandlerMetadata create(Set<Timed> timed, Tags tags, String uri) {
+		List<LongTaskTimer> longTaskTimers = Collections.emptyList();
+		RequestWindowMetrics endpointMetrics = null;
+		AdaptiveConcurrencyLimit concurrencyLimit = null;
+		ResourceUsageSummaries resourceUsage = null;
+		if (tags != null) {
+			longTaskTimers = timed.stream().filter(HandlerMetadata::isNamedLongTask)
+					.map(t -> LongTaskTimer.builder(t).tags(tags).register(registry)).collect(Collectors.toList());
+
+			if (endpointPattern != null && endpointPattern.matcher(uri).matches()) {
+				endpointMetrics = new RequestWindowMetrics(registry, metricName + ".uri.endpoint", tags, "Endpoint",
+						ENDPOINT_STRIPES, apdexMillis(uri), rollingLatency, RollingWindows.DEFAULT);
+			}
+			if (concurrency != null && concurrency.getEndpoints().containsKey(uri)) {
+				concurrencyLimit = new AdaptiveConcurrencyLimit(registry, metricName + ".uri.endpoint", tags,
+						concurrency, concurrency.getEndpoints().get(uri));
+			}
+			if (resourceSampler != null) {
+				resourceUsage = new ResourceUsageSummaries(registry, metricName + ".uri.endpoint", tags, "Endpoint",
+						resourceSampler);
+			}
+		}
+		return new HandlerMetadata(timed, tags, longTaskTimers, endpointMetrics, concurrencyLimit, resourceUsage);
+	}
+
+	private Long apdexMillis(String uri) {
+		if (!apdex.isEnabled()) {
+			return null;
+		}
+		return apdex.satisfiedMillis(uri);
+	}
+
+	private static Tags tags(RequestMappingInfo info) {
+		Set<String> patterns = info.getPatternsCondition().getPatterns();
+		Set<RequestMethod> methods = info.getMethodsCondition().getMethods();
+		if (patterns.size() != 1 || methods.size() != 1) {
+			return null;
+		}
+		return tags(methods.iterator().next().name(), patterns.iterator().next());
+	}
+
+	private static Tags tags(String method, String uri) {
+		return Tags.of(Tag.of("method", method), Tag.of("uri", uri));
+	}
+
+	/**
+	 * Metadata de un mapping cuyos tags dependen del request, una por metodo y patron.
+	 */
+	private final class RequestMappings {
+		private final Set<Timed> timed;
+		private final ConcurrentMap<String, HandlerMetadata> endpoints = new ConcurrentHashMap<>();
+		private final HandlerMetadata unresolved;
+
+		RequestMappings(Set<Timed> timed) {
+			this.timed = timed;
+			this.unresolved = create(timed, null, null);
+		}
+
+		HandlerMetadata get(String method, String pattern) {
+			if (pattern == null || method == null || HttpMethod.resolve(method) == null) {
+				return unresolved;
+			}
+			String key = method + " " + pattern;
+			HandlerMetadata metadata = endpoints.get(key);
+			if (metadata == null) {
+				metadata = endpoints.computeIfAbsent(key, k -> create(timed, tags(method, pattern), pattern));
+			}
+			return metadata;
+		}
+	}
+}
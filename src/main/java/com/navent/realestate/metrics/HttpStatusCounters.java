@@ -0,0 +1,54 @@
+package com.navent.realestate.metrics;
+
+import org.springframework.http.HttpStatus;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Contadores de respuestas por status HTTP registrados una unica vez, para incrementarlos sin alocar ni buscar en
+ * el registry: uno por clase (1XX a 5XX) y, opcionalmente, uno por cada status de {@link HttpStatus} indexado por
+ * codigo.
+ */
+public class HttpStatusCounters {
+	static final String STATUS_CLASS_METRIC = "http.response.status";
+	static final String EXACT_STATUS_METRIC = "http.response.status.exact";
+
+	private static final int MAX_STATUS = 600;
+
+	private final Counter[] statusClassCounters = new Counter[MAX_STATUS / 100];
+	private final Counter[] exactStatusCounters;
+
+	public HttpStatusCounters(MeterRegistry registry, boolean exactStatus) {
+		for (int statusClass = 1; statusClass < statusClassCounters.length; statusClass++) {
+			statusClassCounters[statusClass] = Counter.builder(STATUS_CLASS_METRIC)
+					.tag("status", statusClass + "XX")
+					.register(registry);
+		}
+		if (exactStatus) {
+			exactStatusCounters = new Counter[MAX_STATUS];
+			for (HttpStatus status : HttpStatus.values()) {
+				if (exactStatusCounters[status.value()] == null) {
+					exactStatusCounters[status.value()] = Counter.builder(EXACT_STATUS_METRIC)
+							.tag("status", String.valueOf(status.value()))
+							.register(registry);
+				}
+			}
+		} else {
+			exactStatusCounters = null;
+		}
+	}
+
+	public void increment(int status) {
+		if (status < 100 || status >= MAX_STATUS) {
+			return;
+		}
+		statusClassCounters[status / 100].increment();
+		if (exactStatusCounters != null) {
+			Counter exact = exactStatusCounters[status];
+			if (exact != null) {
+				exact.increment();
+			}
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package com.navent.realestate.metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+
+/**
+ * Nombre del host con el que se informa a zabbix. {@link InetAddress#getLocalHost()} puede tardar o fallar si el DNS
+ * no responde, asi que se resuelve recien cuando se necesita, fuera del arranque, y se guarda al primer exito.
+ */
+final class LocalHostName {
+	private static volatile String hostName;
+
+	private LocalHostName() {
+	}
+
+	/**
+	 * @throws UncheckedIOException si no se pudo resolver; el siguiente llamado vuelve a intentar
+	 */
+	static String get() {
+		String name = hostName;
+		if (name == null) {
+			try {
+				name = InetAddress.getLocalHost().getHostName();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			hostName = name;
+		}
+		return name;
+	}
+}
@@ -0,0 +1,120 @@
+package com.navent.realestate.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Mantiene un archivo mapeado en memoria con el valor actual de cada measurement de la {@link MetricsSnapshot},
+ * para que un sidecar o una herramienta local lo lea con {@link MappedMetricsReader} sin pasar por JMX ni HTTP.
+ * <p>
+ * Cada measurement tiene un slot fijo que se asigna la primera vez que aparece y se actualiza en el lugar en cada
+ * tick. La escritura va entre dos incrementos de la secuencia del header (seqlock) y termina con el CRC de los
+ * slots, asi el lector descarta una lectura que se cruzo con una escritura sin depender del modelo de memoria.
+ * <p>
+ * Las measurements que no entran (archivo lleno o nombre de mas de {@value MappedMetricsFile#MAX_NAME_BYTES} bytes)
+ * se avisan una vez cada una en el log y se cuentan en {@code metrics.mapped.skipped}.
+ */
+public class MappedMetricsExporter implements MetricsSink, MeterBinder {
+	private static final Log logger = LogFactory.getLog(MappedMetricsExporter.class);
+
+	private final MappedMetricsFile file;
+	private final int interval;
+
+	// solo se accede dentro de export, que es synchronized
+	private final Map<String, Integer> slots = new HashMap<>();
+	private final Set<String> skipped = new HashSet<>();
+	private final boolean[] seen;
+	private long sequence;
+
+	private final AtomicInteger skippedCount = new AtomicInteger();
+
+	public MappedMetricsExporter(Path path, int capacity, int interval) throws IOException {
+		this.file = MappedMetricsFile.create(path, capacity);
+		this.interval = interval;
+		this.seen = new boolean[capacity];
+		this.sequence = file.sequence();
+	}
+
+	@Override
+	public String getName() {
+		return "mapped";
+	}
+
+	@Override
+	public int getInterval() {
+		return interval;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("metrics.mapped.skipped", skippedCount, AtomicInteger::get)
+				.description("Measurements left out of the mapped metrics file").register(registry);
+	}
+
+	/**
+	 * Normalmente la llama solo el thread de {@link MetricsExportScheduler}; es synchronized para que dos escrituras
+	 * no se mezclen en el archivo.
+	 */
+	@Override
+	public synchronized void export(MetricsSnapshot snapshot) {
+		file.sequence(++sequence);
+
+		Arrays.fill(seen, false);
+		for (MetricsSnapshot.Entry entry : snapshot.getEntries()) {
+			Integer slot = slot(entry.getHierarchicalName() + ":" + entry.getStatistic());
+			if (slot != null) {
+				file.value(slot, entry.getValue());
+				seen[slot] = true;
+			}
+		}
+		int count = slots.size();
+		for (int slot = 0; slot < count; slot++) {
+			if (!seen[slot]) {
+				file.value(slot, Double.NaN);
+			}
+		}
+		file.commit(snapshot.getTimestamp(), count);
+
+		file.sequence(++sequence);
+	}
+
+	private Integer slot(String key) {
+		Integer slot = slots.get(key);
+		if (slot != null || skipped.contains(key)) {
+			return slot;
+		}
+		byte[] name = key.getBytes(StandardCharsets.UTF_8);
+		if (name.length > MappedMetricsFile.MAX_NAME_BYTES) {
+			skip(key, "Name longer than " + MappedMetricsFile.MAX_NAME_BYTES + " bytes for the mapped metrics file, ");
+			return null;
+		}
+		if (slots.size() == file.capacity()) {
+			skip(key, "Mapped metrics file is full (" + file.capacity() + " slots), ");
+			return null;
+		}
+		slot = slots.size();
+		file.name(slot, name);
+		slots.put(key, slot);
+		return slot;
+	}
+
+	private void skip(String key, String reason) {
+		skipped.add(key);
+		skippedCount.incrementAndGet();
+		logger.warn(reason + "skipping " + key);
+	}
+}
@@ -0,0 +1,172 @@
+package com.navent.realestate.metrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Acceso al archivo compartido entre {@link MappedMetricsExporter} y {@link MappedMetricsReader}, little endian:
+ * <pre>
+ * header (64 bytes)
+ *   0  int    magic "NVMM"
+ *   4  int    version
+ *   8  int    capacity, cantidad de slots
+ *   12 int    slotSize
+ *   16 long   sequence, impar mientras se escribe
+ *   24 long   timestamp del ultimo tick, epoch millis
+ *   32 int    count, slots usados
+ *   36 int    CRC32 de los slots usados
+ * slots (128 bytes cada uno, desde el byte 64)
+ *   0   short  largo del nombre en bytes UTF-8
+ *   2   byte[] nombre, {@code <nombre jerarquico>:<statistic>}
+ *   120 double valor, NaN si el meter ya no existe
+ * </pre>
+ */
+final class MappedMetricsFile {
+	static final int MAX_NAME_BYTES = 118;
+
+	private static final int MAGIC = 0x4E564D4D;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 64;
+	private static final int CAPACITY_OFFSET = 8;
+	private static final int SLOT_SIZE_OFFSET = 12;
+	private static final int SEQUENCE_OFFSET = 16;
+	private static final int TIMESTAMP_OFFSET = 24;
+	private static final int COUNT_OFFSET = 32;
+	private static final int CRC_OFFSET = 36;
+	private static final int SLOT_SIZE = 128;
+	private static final int NAME_OFFSET = 2;
+	private static final int VALUE_OFFSET = 120;
+
+	private final MappedByteBuffer buffer;
+	private final int capacity;
+
+	private MappedMetricsFile(MappedByteBuffer buffer, int capacity) {
+		this.buffer = buffer;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Crea o reutiliza el archivo. Si es de una corrida anterior se sigue su secuencia, para que un lector no la
+	 * vea retroceder.
+	 */
+	static MappedMetricsFile create(Path file, int capacity) throws IOException {
+		long size = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			channel.truncate(size);
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+		long sequence = buffer.getInt(0) == MAGIC ? (buffer.getLong(SEQUENCE_OFFSET) + 1) & ~1L : 0;
+		buffer.putLong(SEQUENCE_OFFSET, sequence + 1);
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putInt(CAPACITY_OFFSET, capacity);
+		buffer.putInt(SLOT_SIZE_OFFSET, SLOT_SIZE);
+		buffer.putInt(COUNT_OFFSET, 0);
+		buffer.putInt(CRC_OFFSET, 0);
+		buffer.putLong(SEQUENCE_OFFSET, sequence);
+		return new MappedMetricsFile(buffer, capacity);
+	}
+
+	static MappedMetricsFile open(Path file) throws IOException {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+				|| buffer.getInt(SLOT_SIZE_OFFSET) != SLOT_SIZE) {
+			throw new IllegalArgumentException("Not a mapped metrics file or unsupported version: " + file);
+		}
+		return new MappedMetricsFile(buffer, buffer.getInt(CAPACITY_OFFSET));
+	}
+
+	int capacity() {
+		return capacity;
+	}
+
+	long sequence() {
+		return buffer.getLong(SEQUENCE_OFFSET);
+	}
+
+	void sequence(long sequence) {
+		buffer.putLong(SEQUENCE_OFFSET, sequence);
+	}
+
+	long timestamp() {
+		return buffer.getLong(TIMESTAMP_OFFSET);
+	}
+
+	int count() {
+		return buffer.getInt(COUNT_OFFSET);
+	}
+
+	int crc() {
+		return buffer.getInt(CRC_OFFSET);
+	}
+
+	/**
+	 * Cierra un tick: timestamp, cantidad de slots usados y su CRC.
+	 */
+	void commit(long timestamp, int count) {
+		ByteBuffer slots = buffer.duplicate();
+		slots.position(HEADER_SIZE);
+		slots.limit(HEADER_SIZE + count * SLOT_SIZE);
+		CRC32 crc = new CRC32();
+		crc.update(slots);
+		buffer.putLong(TIMESTAMP_OFFSET, timestamp);
+		buffer.putInt(COUNT_OFFSET, count);
+		buffer.putInt(CRC_OFFSET, (int) crc.getValue());
+	}
+
+	void name(int slot, byte[] name) {
+		int offset = HEADER_SIZE + slot * SLOT_SIZE;
+		buffer.putShort(offset, (short) name.length);
+		ByteBuffer target = buffer.duplicate();
+		target.position(offset + NAME_OFFSET);
+		target.put(name);
+	}
+
+	void value(int slot, double value) {
+		buffer.putDouble(HEADER_SIZE + slot * SLOT_SIZE + VALUE_OFFSET, value);
+	}
+
+	/**
+	 * Copia los primeros count slots a target, que tiene que tener lugar para {@link #capacity()} slots.
+	 */
+	void copySlots(byte[] target, int count) {
+		ByteBuffer source = buffer.duplicate();
+		source.position(HEADER_SIZE);
+		source.get(target, 0, count * SLOT_SIZE);
+	}
+
+	static byte[] slotsBuffer(int capacity) {
+		return new byte[capacity * SLOT_SIZE];
+	}
+
+	static int crc(byte[] slots, int count) {
+		CRC32 crc = new CRC32();
+		crc.update(slots, 0, count * SLOT_SIZE);
+		return (int) crc.getValue();
+	}
+
+	static String name(byte[] slots, int slot) {
+		int offset = slot * SLOT_SIZE;
+		int length = ByteBuffer.wrap(slots).order(ByteOrder.LITTLE_ENDIAN).getShort(offset);
+		return new String(slots, offset + NAME_OFFSET, length, StandardCharsets.UTF_8);
+	}
+
+	static double value(byte[] slots, int slot) {
+		return ByteBuffer.wrap(slots).order(ByteOrder.LITTLE_ENDIAN).getDouble(slot * SLOT_SIZE + VALUE_OFFSET);
+	}
+}
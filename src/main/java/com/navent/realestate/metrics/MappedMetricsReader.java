@@ -0,0 +1,116 @@
+package com.navent.realestate.metrics;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Lee el archivo de {@link MappedMetricsExporter} desde otro proceso. Solo usa el JDK, asi que se puede usar desde
+ * un sidecar o desde la linea de comandos:
+ * <pre>
+ * java -cp navent-metrics.jar com.navent.realestate.metrics.MappedMetricsReader /tmp/navent-metrics.mmap [prefijo]
+ * </pre>
+ */
+public class MappedMetricsReader {
+	private static final int MAX_ATTEMPTS = 1000;
+
+	private final MappedMetricsFile file;
+	private final byte[] slots;
+
+	private MappedMetricsReader(MappedMetricsFile file) {
+		this.file = file;
+		this.slots = MappedMetricsFile.slotsBuffer(file.capacity());
+	}
+
+	public static MappedMetricsReader open(Path path) throws IOException {
+		return new MappedMetricsReader(MappedMetricsFile.open(path));
+	}
+
+	/**
+	 * No es thread safe, cada thread lector usa su propio reader.
+	 * 
+	 * @return una foto consistente, reintentando mientras el exporter esta escribiendo
+	 * @throws IllegalStateException si no se consigue una foto consistente
+	 */
+	public Snapshot read() {
+		for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+			long before = file.sequence();
+			if ((before & 1) == 0) {
+				long timestamp = file.timestamp();
+				int count = file.count();
+				int crc = file.crc();
+				if (count >= 0 && count <= file.capacity()) {
+					file.copySlots(slots, count);
+					if (file.sequence() == before && MappedMetricsFile.crc(slots, count) == crc) {
+						return new Snapshot(before, timestamp, values(count));
+					}
+				}
+			}
+			Thread.yield();
+		}
+		throw new IllegalStateException("No consistent snapshot after " + MAX_ATTEMPTS + " attempts");
+	}
+
+	private Map<String, Double> values(int count) {
+		Map<String, Double> values = new LinkedHashMap<>(count * 2);
+		for (int slot = 0; slot < count; slot++) {
+			values.put(MappedMetricsFile.name(slots, slot), MappedMetricsFile.value(slots, slot));
+		}
+		return Collections.unmodifiableMap(values);
+	}
+
+	public static class Snapshot {
+		private final long sequence;
+		private final long timestamp;
+		private final Map<String, Double> values;
+
+		Snapshot(long sequence, long timestamp, Map<String, Double> values) {
+			this.sequence = sequence;
+			this.timestamp = timestamp;
+			this.values = values;
+		}
+
+		/**
+		 * @return version de la foto, crece en cada tick del exporter
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * @return momento del tick, epoch millis
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/**
+		 * @return valores por {@code <nombre jerarquico>:<statistic>}, NaN para meters que ya no existen
+		 */
+		public Map<String, Double> getValues() {
+			return values;
+		}
+
+		public Double get(String name) {
+			return values.get(name);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("usage: MappedMetricsReader <file> [prefix]");
+			System.exit(1);
+		}
+		String prefix = args.length > 1 ? args[1] : "";
+		Snapshot snapshot = open(Paths.get(args[0])).read();
+		System.out.println("# sequence " + snapshot.getSequence() + " timestamp " + snapshot.getTimestamp());
+		snapshot.getValues().forEach((name, value) -> {
+			if (name.startsWith(prefix)) {
+				System.out.println(name + " " + value);
+			}
+		});
+	}
+}
@@ -0,0 +1,26 @@
+package com.navent.realestate.metrics;
+
+import io.micrometer.core.instrument.Tag;
+
+/**
+ * Estimacion compartida de la memoria que ocupan los tags de un meter, ver {@link RegistryFootprintMetrics} y
+ * {@link TagCardinalityLimiter}.
+ */
+final class MeterFootprint {
+	// objeto Tag y dos Strings por tag sin contar los chars
+	private static final int TAG_BYTES = 24 + 2 * 40;
+
+	private MeterFootprint() {
+	}
+
+	/**
+	 * @return bytes estimados de los tags, con dos bytes por char de la clave y el valor
+	 */
+	static long tagBytes(Iterable<Tag> tags) {
+		long bytes = 0;
+		for (Tag tag : tags) {
+			bytes += TAG_BYTES + 2L * (tag.getKey().length() + tag.getValue().length());
+		}
+		return bytes;
+	}
+}
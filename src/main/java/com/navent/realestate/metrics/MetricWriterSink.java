@@ -0,0 +1,43 @@
+package com.navent.realestate.metrics;
+
+import java.util.Date;
+
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+
+/**
+ * Escribe la {@link MetricsSnapshot} en un {@link MetricWriter} de actuator (el {@code JmxMetricWriter} de
+ * {@link MetricsConfig}), con nombre {@code <nombre jerarquico>.<statistic>}. Reemplaza la copia periodica de
+ * {@code MetricsEndpointMetricReader}, que volvia a leer todas las metricas por su cuenta.
+ */
+public class MetricWriterSink implements MetricsSink {
+	private final MetricWriter writer;
+	private final int interval;
+
+	public MetricWriterSink(MetricWriter writer, int interval) {
+		this.writer = writer;
+		this.interval = interval;
+	}
+
+	@Override
+	public String getName() {
+		return "jmx";
+	}
+
+	@Override
+	public int getInterval() {
+		return interval;
+	}
+
+	@Override
+	public void export(MetricsSnapshot snapshot) {
+		Date timestamp = new Date(snapshot.getTimestamp());
+		for (MetricsSnapshot.Entry entry : snapshot.getEntries()) {
+			double value = entry.getValue();
+			if (Double.isNaN(value) || Double.isInfinite(value)) {
+				continue;
+			}
+			writer.set(new Metric<Double>(entry.getHierarchicalName() + "." + entry.getStatistic(), value, timestamp));
+		}
+	}
+}
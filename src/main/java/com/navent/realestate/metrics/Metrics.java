@@ -1,30 +1,151 @@
 package com.navent.realestate.metrics;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
 
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.micrometer.core.instrument.config.NamingConvention;
 import io.micrometer.core.instrument.util.HierarchicalNameMapper;
 
+/**
+ * Facade over the global registry that hands out stable meter handles and registers their Zabbix discovery
+ * metadata. The first call for a name and tags registers the meter; later calls return the cached handle without
+ * touching the registry. Hot paths should keep the returned handle instead of calling these methods inline.
+ */
 public class Metrics {
 	private static final Set<ZabbixRegisteredMetric> customMetricRegistry = ConcurrentHashMap.newKeySet();
+	private static final ConcurrentMap<MeterKey, Meter> handles = new ConcurrentHashMap<>();
+	private static final AtomicLong generation = new AtomicLong();
 
 	/**
-     * Tracks a monotonically increasing value.
-     *
-     * @param name The base metric name
-     * @param tags MUST be an even number of arguments representing key/value pairs of tags.
-     */
-    public static Counter counter(String name, String... tags) {
-    	Counter c = io.micrometer.core.instrument.Metrics.counter(name, tags);
-        String hierarchicalName = HierarchicalNameMapper.DEFAULT.toHierarchicalName(c.getId(), NamingConvention.camelCase);
-        customMetricRegistry.add(new ZabbixRegisteredMetric(hierarchicalName, ZabbixRegisteredMetricType.counter));
-        return c;
-    }
-
-    public static Set<ZabbixRegisteredMetric> getCustomMetricRegistryView() {
+	 * Tracks a monotonically increasing value.
+	 *
+	 * @param name The base metric name
+	 * @param tags MUST be an even number of arguments representing key/value pairs of tags.
+	 */
+	public static Counter counter(String name, String... tags) {
+		return handle(ZabbixRegisteredMetricType.counter, name, tags,
+				registry -> Counter.builder(name).tags(tags).register(registry));
+	}
+
+	/**
+	 * Register a gauge that reports the value of the object after the function {@code valueFunction} is applied.
+	 * The gauge holds a weak reference to {@code obj}, as Micrometer gauges do.
+	 *
+	 * @param name The base metric name
+	 * @param obj State object used to compute a value.
+	 * @param valueFunction Function that produces an instantaneous gauge value from the state object.
+	 * @param tags MUST be an even number of arguments representing key/value pairs of tags.
+	 */
+	public static <T> Gauge gauge(String name, T obj, ToDoubleFunction<T> valueFunction, String... tags) {
+		return handle(ZabbixRegisteredMetricType.gauge, name, tags,
+				registry -> Gauge.builder(name, obj, valueFunction).tags(tags).register(registry));
+	}
+
+	/**
+	 * Measures the time taken for short tasks and the count of these tasks.
+	 *
+	 * @param name The base metric name
+	 * @param tags MUST be an even number of arguments representing key/value pairs of tags.
+	 */
+	public static Timer timer(String name, String... tags) {
+		return handle(ZabbixRegisteredMetricType.timer, name, tags,
+				registry -> Timer.builder(name).tags(tags).register(registry));
+	}
+
+	/**
+	 * Measures the distribution of samples.
+	 *
+	 * @param name The base metric name
+	 * @param tags MUST be an even number of arguments representing key/value pairs of tags.
+	 */
+	public static DistributionSummary summary(String name, String... tags) {
+		return handle(ZabbixRegisteredMetricType.summary, name, tags,
+				registry -> DistributionSummary.builder(name).tags(tags).register(registry));
+	}
+
+	/**
+	 * @return a value that changes every time a new metric is added to the custom metric registry
+	 */
+	public static long getGeneration() {
+		return generation.get();
+	}
+
+	public static Set<ZabbixRegisteredMetric> getCustomMetricRegistryView() {
 		return Collections.unmodifiableSet(customMetricRegistry);
 	}
+
+	@SuppressWarnings("unchecked")
+	private static <M extends Meter> M handle(ZabbixRegisteredMetricType type, String name, String[] tags,
+			Function<MeterRegistry, M> register) {
+		Meter meter = handles.get(MeterKey.probe(type, name, tags));
+		if (meter == null) {
+			meter = handles.computeIfAbsent(new MeterKey(type, name, tags), k -> {
+				M registered = register.apply(io.micrometer.core.instrument.Metrics.globalRegistry);
+				String hierarchicalName = HierarchicalNameMapper.DEFAULT.toHierarchicalName(registered.getId(),
+						NamingConvention.camelCase);
+				if (customMetricRegistry.add(new ZabbixRegisteredMetric(hierarchicalName, type))) {
+					generation.incrementAndGet();
+				}
+				return registered;
+			});
+		}
+		return (M) meter;
+	}
+
+	private static final class MeterKey {
+		private final ZabbixRegisteredMetricType type;
+		private final String name;
+		private final String[] tags;
+		private final int hash;
+
+		/**
+		 * A key to be cached. It copies the tags: the caller owns the varargs array and may reuse or change it.
+		 */
+		MeterKey(ZabbixRegisteredMetricType type, String name, String[] tags) {
+			this(type, name, tags, true);
+		}
+
+		private MeterKey(ZabbixRegisteredMetricType type, String name, String[] tags, boolean copy) {
+			this.type = type;
+			this.name = name;
+			this.tags = copy ? tags.clone() : tags;
+			this.hash = 31 * (31 * type.hashCode() + name.hashCode()) + Arrays.hashCode(tags);
+		}
+
+		/**
+		 * A key for lookups only, sharing the caller's array so a cache hit doesn't allocate. Never store it.
+		 */
+		static MeterKey probe(ZabbixRegisteredMetricType type, String name, String[] tags) {
+			return new MeterKey(type, name, tags, false);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof MeterKey)) {
+				return false;
+			}
+			MeterKey other = (MeterKey) o;
+			return type == other.type && name.equals(other.name) && Arrays.equals(tags, other.tags);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
 }
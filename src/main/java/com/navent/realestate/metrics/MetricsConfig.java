@@ -2,7 +2,9 @@ package com.navent.realestate.metrics;
 
 import com.quigley.zabbixj.agent.ZabbixAgent;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.actuate.autoconfigure.ExportMetricWriter;
 import org.springframework.boot.actuate.endpoint.MetricsEndpoint;
 import org.springframework.boot.actuate.endpoint.MetricsEndpointMetricReader;
@@ -10,16 +12,18 @@ import org.springframework.boot.actuate.metrics.jmx.JmxMetricWriter;
 import org.springframework.boot.actuate.metrics.writer.MetricWriter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jmx.export.MBeanExporter;
 import org.springframework.util.Assert;
-import org.springframework.web.context.WebApplicationContext;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
-import org.springframework.web.servlet.handler.HandlerMappingIntrospector;
 
-import java.net.InetAddress;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.function.Predicate;
 
 import io.micrometer.core.instrument.Meter;
@@ -50,15 +54,35 @@ public class MetricsConfig extends WebMvcConfigurerAdapter {
 	}
 
 	@Bean
+	@ConditionalOnProperty(name = "metrics.export.jmx.enabled", havingValue = "false", matchIfMissing = true)
 	public MetricsEndpointMetricReader metricsEndpointMetricReader(MetricsEndpoint metricsEndpoint) {
 		return new MetricsEndpointMetricReader(metricsEndpoint);
 	}
 
+	@Bean
+	public RegistryFootprintMetrics registryFootprintMetrics() {
+		return new RegistryFootprintMetrics();
+	}
+
 	@Bean
 	public WebMvcTagsProvider servletTagsProvider() {
 		return new CustomWebMvcTagsProvider();
 	}
 
+	@Bean
+	@ConditionalOnProperty(name = "metrics.cardinality.enabled", havingValue = "true")
+	public TagCardinalityLimiter tagCardinalityLimiter(NaventMetricsProperties metricsProperties,
+			MetricsProperties properties) {
+		return new TagCardinalityLimiter(metricsProperties.getCardinality(),
+				properties.getWeb().getServer().getRequestsMetricName());
+	}
+
+	@Bean
+	@ConditionalOnProperty(name = "metrics.cardinality.enabled", havingValue = "true")
+	public MeterRegistryCustomizer<MeterRegistry> tagCardinalityLimit(TagCardinalityLimiter limiter) {
+		return registry -> registry.config().meterFilter(limiter);
+	}
+
 	@Bean
 	public MeterRegistryCustomizer<JmxMeterRegistry> jmxMetricsNamingConvention() {
 		return registry -> registry.config().namingConvention(NamingConvention.camelCase);
@@ -72,13 +96,35 @@ public class MetricsConfig extends WebMvcConfigurerAdapter {
 
 	@SuppressWarnings("deprecation")
 	@Bean
-	public NaventWebMvcMetricsFilter naventWebMetricsFilter(MeterRegistry registry, WebMvcTagsProvider tagsProvider,
-			WebApplicationContext ctx, MetricsProperties properties, NaventMetricsProperties naventProperties) {
-		return new NaventWebMvcMetricsFilter(registry, tagsProvider,
-				properties.getWeb().getServer().getRequestsMetricName(), true, new HandlerMappingIntrospector(ctx),
+	public HandlerMetadataTable handlerMetadataTable(MeterRegistry registry, MetricsProperties properties,
+			NaventMetricsProperties naventProperties) {
+		return new HandlerMetadataTable(registry, properties.getWeb().getServer().getRequestsMetricName(),
+				naventProperties);
+	}
+
+	@SuppressWarnings("deprecation")
+	@Bean
+	public RequestMetricsRecorder requestMetricsRecorder(MeterRegistry registry, MetricsProperties properties,
+			NaventMetricsProperties naventProperties) {
+		return new RequestMetricsRecorder(registry, properties.getWeb().getServer().getRequestsMetricName(), true,
 				naventProperties);
 	}
 
+	@SuppressWarnings("deprecation")
+	@Bean
+	public NaventWebMvcMetricsFilter naventWebMetricsFilter(WebMvcTagsProvider tagsProvider,
+			RequestMetricsRecorder recorder, MetricsProperties properties, NaventMetricsProperties naventProperties,
+			HandlerMetadataTable handlerMetadataTable) {
+		return new NaventWebMvcMetricsFilter(tagsProvider, recorder,
+				properties.getWeb().getServer().getRequestsMetricName(), naventProperties, handlerMetadataTable);
+	}
+
+	@Bean
+	@ConditionalOnProperty(name = "metrics.slowRequests.enabled", havingValue = "true")
+	public SlowRequestsEndpoint slowRequestsEndpoint(RequestMetricsRecorder recorder) {
+		return new SlowRequestsEndpoint(recorder.getSlowRequests());
+	}
+
 	@Bean
 	@Autowired
 	public EndpointMetricsProvider endpointMetricsProvider(JmxConfig config,
@@ -93,18 +139,95 @@ public class MetricsConfig extends WebMvcConfigurerAdapter {
 	@Bean
 	@Autowired
 	public ZabbixAgent zabbixAgent(EndpointMetricsProvider endpointMetricsProvider,
-			NaventMetricsProperties metricsProperties) throws Exception {
+			NaventMetricsProperties metricsProperties, MeterRegistry registry) {
+		NaventMetricsProperties.Zabbix zabbix = metricsProperties.getZabbix();
 		ZabbixAgent agent = new ZabbixAgent();
 		agent.setEnableActive(true);
 		agent.setEnablePassive(false);
-		agent.setListenPort(metricsProperties.getZabbix().getListenPort());
-		agent.setHostName(InetAddress.getLocalHost().getHostName());
-		agent.setServerAddress(InetAddress.getByName(metricsProperties.getZabbix().getServerHost()));
-		agent.setServerPort(metricsProperties.getZabbix().getServerPort());
+		agent.setListenPort(zabbix.getListenPort());
+		agent.setServerPort(zabbix.getServerPort());
 		agent.setRefreshInterval(60);
-		agent.addProvider("endpoint", endpointMetricsProvider);
-		agent.addProvider("counter", new CounterMetricsProvider());
-		agent.start();
+		agent.addProvider("endpoint", new TimedMetricsProvider("endpoint", endpointMetricsProvider, registry));
+		agent.addProvider("counter", new TimedMetricsProvider("counter", new CounterMetricsProvider(), registry));
+		agent.addProvider("gauge", new TimedMetricsProvider("gauge",
+				new RegisteredMetricsProvider(ZabbixRegisteredMetricType.gauge), registry));
+		agent.addProvider("timer", new TimedMetricsProvider("timer",
+				new RegisteredMetricsProvider(ZabbixRegisteredMetricType.timer), registry));
+		agent.addProvider("summary", new TimedMetricsProvider("summary",
+				new RegisteredMetricsProvider(ZabbixRegisteredMetricType.summary), registry));
+		// started in the background by zabbixAgentStarter, it may not be running yet when the context is refreshed
 		return agent;
 	}
+
+	@Bean(destroyMethod = "stop")
+	public ZabbixAgentStarter zabbixAgentStarter(ZabbixAgent zabbixAgent,
+			NaventMetricsProperties metricsProperties) {
+		NaventMetricsProperties.Zabbix zabbix = metricsProperties.getZabbix();
+		// host names are resolved by the starter thread, not while the context starts
+		ZabbixAgentStarter starter = new ZabbixAgentStarter(zabbixAgent, zabbix.getServerHost(),
+				zabbix.getRetryInitialMillis(), zabbix.getRetryMaxMillis());
+		starter.start();
+		return starter;
+	}
+
+	@Bean
+	public ZabbixAgentHealthIndicator zabbixAgentHealthIndicator(ZabbixAgentStarter zabbixAgentStarter) {
+		return new ZabbixAgentHealthIndicator(zabbixAgentStarter);
+	}
+
+	@Bean(destroyMethod = "stop")
+	public MetricsExportScheduler metricsExportScheduler(MeterRegistry registry,
+			ObjectProvider<List<MetricsSink>> sinks) {
+		List<MetricsSink> available = sinks.getIfAvailable();
+		MetricsExportScheduler scheduler = new MetricsExportScheduler(registry,
+				available == null ? Collections.emptyList() : available);
+		scheduler.start();
+		return scheduler;
+	}
+
+	@Bean
+	@ConditionalOnProperty(name = "metrics.export.jmx.enabled", havingValue = "true")
+	public MetricWriterSink jmxMetricWriterSink(@Qualifier("metricWriter") MetricWriter metricWriter,
+			NaventMetricsProperties metricsProperties) {
+		return new MetricWriterSink(metricWriter, metricsProperties.getExport().getJmx().getInterval());
+	}
+
+	@Bean
+	@ConditionalOnProperty(name = "metrics.zabbix.trapper.enabled", havingValue = "true")
+	public ZabbixTrapperExporter zabbixTrapperExporter(NaventMetricsProperties metricsProperties) {
+		NaventMetricsProperties.Zabbix zabbix = metricsProperties.getZabbix();
+		NaventMetricsProperties.Trapper trapper = zabbix.getTrapper();
+		ZabbixTrapperSender sender = new ZabbixTrapperSender(zabbix.getServerHost(), zabbix.getServerPort(),
+				trapper.getConnectTimeout(), trapper.getReadTimeout());
+		return new ZabbixTrapperExporter(sender, LocalHostName::get, trapper.getInterval());
+	}
+
+	@Bean
+	@ConditionalOnProperty(name = "metrics.mapped.enabled", havingValue = "true")
+	public MappedMetricsExporter mappedMetricsExporter(NaventMetricsProperties metricsProperties) throws Exception {
+		NaventMetricsProperties.Mapped mapped = metricsProperties.getMapped();
+		return new MappedMetricsExporter(Paths.get(mapped.getPath()), mapped.getCapacity(), mapped.getInterval());
+	}
+
+	@Bean
+	@ConditionalOnProperty(name = "metrics.autoscaling.enabled", havingValue = "true")
+	public AutoscalingMetricsRenderer autoscalingMetricsRenderer(MetricsProperties properties,
+			NaventMetricsProperties naventProperties) {
+		NaventMetricsProperties.Autoscaling autoscaling = naventProperties.getAutoscaling();
+		List<String> signals = autoscaling.getSignals();
+		if (signals.isEmpty()) {
+			@SuppressWarnings("deprecation")
+			String metricName = properties.getWeb().getServer().getRequestsMetricName();
+			signals = Arrays.asList(metricName + ".uri.root.1.min.request.rate", metricName + ".uri.root.in.flight");
+		}
+		return new AutoscalingMetricsRenderer(signals, autoscaling.getRefreshInterval());
+	}
+
+	@Bean
+	@ConditionalOnProperty(name = "metrics.autoscaling.enabled", havingValue = "true")
+	public ServletRegistrationBean autoscalingMetricsServlet(AutoscalingMetricsRenderer renderer,
+			NaventMetricsProperties naventProperties, MeterRegistry registry) {
+		return new ServletRegistrationBean(new AutoscalingMetricsServlet(renderer, registry),
+				naventProperties.getAutoscaling().getPath());
+	}
 }
@@ -0,0 +1,131 @@
+package com.navent.realestate.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Un solo thread que en cada ciclo toma una {@link MetricsSnapshot} y se la pasa a los {@link MetricsSink} a los que
+ * les toca exportar. El ciclo dura el maximo comun divisor de los intervalos de los sinks; si en un ciclo no le toca
+ * a ninguno no se toma la foto.
+ * <p>
+ * Publica {@code metrics.export.snapshot} (tomar la foto), {@code metrics.export.cycle} (el ciclo completo) y
+ * {@code metrics.export.sink} con tags {@code sink} y {@code result}.
+ */
+public class MetricsExportScheduler {
+	private static final Log logger = LogFactory.getLog(MetricsExportScheduler.class);
+
+	private final MeterRegistry registry;
+	private final List<ScheduledSink> sinks = new ArrayList<>();
+	private final int tick;
+	private final Timer snapshotTimer;
+	private final Timer cycleTimer;
+
+	// solo se accede desde el thread del scheduler
+	private long cycle;
+	private ScheduledExecutorService executor;
+
+	public MetricsExportScheduler(MeterRegistry registry, List<MetricsSink> sinks) {
+		this.registry = registry;
+		int gcd = 0;
+		for (MetricsSink sink : sinks) {
+			if (sink.getInterval() < 1) {
+				throw new IllegalArgumentException("Interval of sink " + sink.getName() + " must be positive");
+			}
+			gcd = gcd(gcd, sink.getInterval());
+		}
+		this.tick = gcd;
+		for (MetricsSink sink : sinks) {
+			this.sinks.add(new ScheduledSink(sink, sink.getInterval() / tick, registry));
+		}
+		this.snapshotTimer = Timer.builder("metrics.export.snapshot")
+				.description("Time to take the snapshot shared by all sinks").register(registry);
+		this.cycleTimer = Timer.builder("metrics.export.cycle")
+				.description("Time of a complete export cycle, snapshot and sinks").register(registry);
+	}
+
+	public void start() {
+		if (sinks.isEmpty()) {
+			return;
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "navent-metrics-export");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleWithFixedDelay(this::export, 0, tick, TimeUnit.SECONDS);
+	}
+
+	public void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	void export() {
+		long current = cycle++;
+		List<ScheduledSink> due = new ArrayList<>(sinks.size());
+		for (ScheduledSink sink : sinks) {
+			if (current % sink.everyCycles == 0) {
+				due.add(sink);
+			}
+		}
+		if (due.isEmpty()) {
+			return;
+		}
+
+		long start = System.nanoTime();
+		try {
+			MetricsSnapshot snapshot = MetricsSnapshot.take(registry);
+			snapshotTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			for (ScheduledSink sink : due) {
+				sink.export(snapshot);
+			}
+		} catch (Exception e) {
+			logger.warn("Unable to take metrics snapshot", e);
+		}
+		cycleTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+	}
+
+	private static int gcd(int a, int b) {
+		return b == 0 ? a : gcd(b, a % b);
+	}
+
+	private static class ScheduledSink {
+		final MetricsSink sink;
+		final long everyCycles;
+		final Timer success;
+		final Timer failure;
+
+		ScheduledSink(MetricsSink sink, long everyCycles, MeterRegistry registry) {
+			this.sink = sink;
+			this.everyCycles = everyCycles;
+			this.success = sinkTimer(registry, sink.getName(), "success");
+			this.failure = sinkTimer(registry, sink.getName(), "failure");
+		}
+
+		private static Timer sinkTimer(MeterRegistry registry, String sink, String result) {
+			return Timer.builder("metrics.export.sink").tag("sink", sink).tag("result", result)
+					.description("Time to export a snapshot to a sink").register(registry);
+		}
+
+		void export(MetricsSnapshot snapshot) {
+			long start = System.nanoTime();
+			try {
+				sink.export(snapshot);
+				success.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			} catch (Exception e) {
+				failure.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+				logger.warn("Unable to export metrics to " + sink.getName(), e);
+			}
+		}
+	}
+}
@@ -1,22 +1,27 @@
 package com.navent.realestate.metrics;
 
-import java.util.Arrays;
-
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
 
-import io.micrometer.core.instrument.Metrics;
-import io.micrometer.core.instrument.Tag;
-
+/**
+ * Informa al {@link NaventWebMvcMetricsFilter} el handler resuelto por el DispatcherServlet. Los status de
+ * respuesta se cuentan desde el filtro al terminar el request, ver {@link HttpStatusCounters}. Si el endpoint
+ * supera su limite de concurrencia el request se corta aca, con la respuesta de rechazo ya escrita. En el dispatch
+ * async de un request que mide recursos acota el tramo que escribe el resultado.
+ */
 public class MetricsInterceptor extends HandlerInterceptorAdapter {
 
 	@Override
-	public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
-			ModelAndView modelAndView) throws Exception {
-		Double status = response.getStatus() / 100d;
-		Metrics.counter("http.response.status", Arrays.asList(Tag.of("status", String.format("%dXX", status.intValue())))).increment();
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+			throws Exception {
+		return NaventWebMvcMetricsFilter.handlerResolved(request, response, handler);
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception ex) throws Exception {
+		NaventWebMvcMetricsFilter.handlerCompleted(request);
 	}
 }
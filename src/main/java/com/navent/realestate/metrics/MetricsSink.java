@@ -0,0 +1,20 @@
+package com.navent.realestate.metrics;
+
+/**
+ * Destino de las metricas que exporta {@link MetricsExportScheduler}. Cada sink tiene su propio intervalo y recibe
+ * la foto del ciclo en el que le toca exportar; siempre se llama desde el mismo thread.
+ */
+public interface MetricsSink {
+
+	/**
+	 * @return nombre corto, se usa como tag {@code sink} de {@code metrics.export.sink}
+	 */
+	String getName();
+
+	/**
+	 * @return segundos entre exports
+	 */
+	int getInterval();
+
+	void export(MetricsSnapshot snapshot) throws Exception;
+}
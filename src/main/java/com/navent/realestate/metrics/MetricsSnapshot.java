@@ -0,0 +1,87 @@
+package com.navent.realestate.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.micrometer.core.instrument.Measurement;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.config.NamingConvention;
+import io.micrometer.core.instrument.util.HierarchicalNameMapper;
+
+/**
+ * Foto de todas las measurements del {@link MeterRegistry} en un momento dado. {@link MetricsExportScheduler} la
+ * toma una sola vez por ciclo y la comparte entre todos los {@link MetricsSink}, asi cada meter se lee y se
+ * convierte a nombre jerarquico una vez aunque se exporte por varios caminos.
+ */
+public class MetricsSnapshot {
+	private final long timestamp;
+	private final List<Entry> entries;
+
+	MetricsSnapshot(long timestamp, List<Entry> entries) {
+		this.timestamp = timestamp;
+		this.entries = entries;
+	}
+
+	public static MetricsSnapshot take(MeterRegistry registry) {
+		List<Meter> meters = registry.getMeters();
+		List<Entry> entries = new ArrayList<>(meters.size() * 2);
+		for (Meter meter : meters) {
+			Meter.Id id = meter.getId();
+			String name = HierarchicalNameMapper.DEFAULT.toHierarchicalName(id, NamingConvention.camelCase);
+			for (Measurement measurement : meter.measure()) {
+				entries.add(new Entry(id, name, measurement.getStatistic().getTagValueRepresentation(),
+						measurement.getValue()));
+			}
+		}
+		return new MetricsSnapshot(System.currentTimeMillis(), Collections.unmodifiableList(entries));
+	}
+
+	/**
+	 * @return momento de la foto, epoch millis
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	public static class Entry {
+		private final Meter.Id id;
+		private final String hierarchicalName;
+		private final String statistic;
+		private final double value;
+
+		Entry(Meter.Id id, String hierarchicalName, String statistic, double value) {
+			this.id = id;
+			this.hierarchicalName = hierarchicalName;
+			this.statistic = statistic;
+			this.value = value;
+		}
+
+		public Meter.Id getId() {
+			return id;
+		}
+
+		/**
+		 * @return nombre con tags en camelCase, el mismo que informa el discovery de zabbix
+		 */
+		public String getHierarchicalName() {
+			return hierarchicalName;
+		}
+
+		/**
+		 * @return statistic de la measurement, por ejemplo {@code count} o {@code value}
+		 */
+		public String getStatistic() {
+			return statistic;
+		}
+
+		public double getValue() {
+			return value;
+		}
+	}
+}
@@ -1,5 +1,11 @@
 package com.navent.realestate.metrics;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 import lombok.Data;
@@ -14,6 +20,18 @@ public class NaventMetricsProperties {
 	private Zabbix zabbix = new Zabbix();
 	private Trace trace = new Trace();
 	private Apdex apdex = new Apdex();
+	private Status status = new Status();
+	private RollingLatency rollingLatency = new RollingLatency();
+	private Async async = new Async();
+	private Autoscaling autoscaling = new Autoscaling();
+	private Mapped mapped = new Mapped();
+	private Export export = new Export();
+	private Cardinality cardinality = new Cardinality();
+	private Concurrency concurrency = new Concurrency();
+	private Windows windows = new Windows();
+	private Resources resources = new Resources();
+	private SlowRequests slowRequests = new SlowRequests();
+	private Overhead overhead = new Overhead();
 
 	@Data
 	@NoArgsConstructor
@@ -27,20 +45,270 @@ public class NaventMetricsProperties {
 		private boolean enabled;
 		private String senderEndpoint;
 		private String serviceName;
+		private Reporter reporter = new Reporter();
+		private Sampling sampling = new Sampling();
+	}
+
+	/**
+	 * Que trazas se envian. mode decide la tasa base: ALWAYS, PROBABILITY (probability, de 0 a 1) o RATE_LIMITED
+	 * (tracesPerSecond). endpoints pisa la probabilidad por patron de url. Con keepInteresting ademas se envian
+	 * siempre las trazas con error o mas lentas que el umbral de tolerating de apdex; la decision se toma al
+	 * terminar el span raiz, con hasta pendingMaxTraces trazas en memoria entre pendientes y ya decididas y hasta
+	 * pendingMaxSpans spans hijos por traza pendiente.
+	 */
+	@Data
+	@NoArgsConstructor
+	public static class Sampling {
+		private SamplingMode mode = SamplingMode.ALWAYS;
+		private float probability = 0.01f;
+		private int tracesPerSecond = 10;
+		private Map<String, Float> endpoints = new HashMap<>();
+		private boolean keepInteresting;
+		private int pendingMaxTraces = 1000;
+		private int pendingMaxSpans = 200;
+	}
+
+	public enum SamplingMode {
+		ALWAYS, PROBABILITY, RATE_LIMITED
+	}
+
+	/**
+	 * Envio de spans a zipkin. Tiempos en milisegundos. Con spoolDirectory, los mensajes que no se pudieron enviar
+	 * se guardan en disco (hasta spoolMaxBytes) y se reenvian cuando el collector vuelve a responder.
+	 */
+	@Data
+	@NoArgsConstructor
+	public static class Reporter {
+		private int queuedMaxSpans = 10000;
+		private int queuedMaxBytes = 1024 * 1024;
+		private int messageMaxBytes = 500 * 1024;
+		private long messageTimeout = 1000;
+		private String encoding = "JSON";
+		private boolean compression = true;
+		private int connectTimeout = 10000;
+		private int readTimeout = 60000;
+		private String spoolDirectory;
+		private long spoolMaxBytes = 64 * 1024 * 1024;
 	}
 
+	/**
+	 * El agente arranca en segundo plano; si el DNS o el server no responden se reintenta con un backoff que empieza
+	 * en retryInitialMillis y se duplica hasta retryMaxMillis.
+	 */
 	@Data
 	@NoArgsConstructor
 	public static class Zabbix {
 		private String serverHost = "zabbix.bumeran.biz";
 		private int serverPort = 10051;
 		private int listenPort = 10051;
+		private long retryInitialMillis = 1000;
+		private long retryMaxMillis = 60000;
+		private Trapper trapper = new Trapper();
+	}
+
+	/**
+	 * Envio de valores por trapper en vez de que zabbix los lea por JMX. Intervalo en segundos, timeouts en
+	 * milisegundos.
+	 */
+	@Data
+	@NoArgsConstructor
+	public static class Trapper {
+		private boolean enabled;
+		private int interval = 60;
+		private int connectTimeout = 3000;
+		private int readTimeout = 5000;
 	}
 
 	@Data
 	@NoArgsConstructor
 	public static class Apdex {
+		/**
+		 * Un request es tolerating hasta este multiplo del umbral de satisfied, mas alla es frustrated.
+		 */
+		public static final int TOLERATING_FACTOR = 4;
+
 		private boolean enabled;
 		private long millis;
+		/**
+		 * Umbral de satisfied por endpoint, con el patron del mapping como clave. Los que no figuran usan millis.
+		 */
+		private Map<String, Long> endpoints = new HashMap<>();
+
+		/**
+		 * @param uri patron del mapping
+		 * @return umbral de satisfied del endpoint en milisegundos
+		 */
+		public long satisfiedMillis(String uri) {
+			return endpoints.getOrDefault(uri, millis);
+		}
+
+		/**
+		 * @param uri patron del mapping
+		 * @return umbral de tolerating del endpoint en milisegundos
+		 */
+		public long toleratingMillis(String uri) {
+			return satisfiedMillis(uri) * TOLERATING_FACTOR;
+		}
+	}
+
+	@Data
+	@NoArgsConstructor
+	public static class Status {
+		private boolean exact;
+	}
+
+	/**
+	 * Percentiles de latencia sobre una ventana deslizante (HDR histogram por chunks) en lugar del histograma
+	 * acumulado del timer de la app. Ventana en segundos, maximo registrable en milisegundos.
+	 */
+	@Data
+	@NoArgsConstructor
+	public static class RollingLatency {
+		private boolean enabled;
+		private int significantDigits = 2;
+		private int window = 60;
+		private int chunks = 6;
+		private long highestTrackableMillis = 300000;
+	}
+
+	/**
+	 * Medicion de requests async (DeferredResult, Callable, CompletableFuture) al completarse, con gauges de
+	 * requests en curso y el tiempo del dispatch inicial separado del de espera.
+	 */
+	@Data
+	@NoArgsConstructor
+	public static class Async {
+		private boolean enabled = true;
+	}
+
+	/**
+	 * Endpoint liviano para el autoescalado. Sin signals se exponen el request rate de 1 minuto y los requests en
+	 * curso de la app. Intervalo en segundos.
+	 */
+	@Data
+	@NoArgsConstructor
+	public static class Autoscaling {
+		private boolean enabled;
+		private String path = "/manage/autoscaling";
+		private int refreshInterval = 5;
+		private List<String> signals = new ArrayList<>();
+	}
+
+	/**
+	 * Archivo mapeado en memoria con el valor actual de cada metrica, para lectores locales. capacity es la
+	 * cantidad maxima de measurements, intervalo en segundos.
+	 */
+	@Data
+	@NoArgsConstructor
+	public static class Mapped {
+		private boolean enabled;
+		private String path = "/tmp/navent-metrics.mmap";
+		private int capacity = 4096;
+		private int interval = 1;
+	}
+
+	/**
+	 * Sinks del {@link MetricsExportScheduler} que no tienen su propia seccion. Con jmx habilitado las metricas se
+	 * escriben en el JmxMetricWriter desde la foto compartida en lugar de copiarse con MetricsEndpointMetricReader.
+	 */
+	@Data
+	@NoArgsConstructor
+	public static class Export {
+		private Jmx jmx = new Jmx();
+	}
+
+	/**
+	 * Intervalo en segundos.
+	 */
+	@Data
+	@NoArgsConstructor
+	public static class Jmx {
+		private boolean enabled;
+		private int interval = 5;
+	}
+
+	/**
+	 * Maximo de combinaciones de tags distintas por nombre de meter, con limites por nombre en limits. Pasado el
+	 * limite los valores de overflowTags se reemplazan por OTHER.
+	 */
+	@Data
+	@NoArgsConstructor
+	public static class Cardinality {
+		private boolean enabled;
+		private int maxTagCombinations = 200;
+		private Map<String, Integer> limits = new HashMap<>();
+		private List<String> overflowTags = new ArrayList<>(Arrays.asList("uri"));
+	}
+
+	/**
+	 * Limite adaptativo de requests concurrentes de la app, entre minLimit y maxLimit. endpoints agrega un limite
+	 * propio para cada patron del mapping listado, con su maximo como valor. Los requests que lo superan se
+	 * responden con rejectStatus y, si retryAfter es mayor a cero, el header Retry-After en segundos. windowSize es
+	 * la cantidad de requests entre cada ajuste; si mas de errorThreshold de la ventana termino con error o timeout
+	 * el limite se multiplica por backoffRatio.
+	 */
+	@Data
+	@NoArgsConstructor
+	public static class Concurrency {
+		private boolean enabled;
+		private int initialLimit = 100;
+		private int minLimit = 10;
+		private int maxLimit = 1000;
+		private int windowSize = 100;
+		private double smoothing = 0.2;
+		private double rttTolerance = 1.5;
+		private double backoffRatio = 0.9;
+		private double errorThreshold = 0.05;
+		private Map<String, Integer> endpoints = new HashMap<>();
+		private int rejectStatus = 503;
+		private int retryAfter = 1;
+	}
+
+	/**
+	 * Ventanas en segundos de los contadores de {@code .uri.root}, por ejemplo 10, 60, 300 y 900. Salen de un anillo
+	 * compartido por senal que se suma al leer, ver {@link RollingWindows}. Los endpoints siguen con la ventana de un
+	 * minuto.
+	 */
+	@Data
+	@NoArgsConstructor
+	public static class Windows {
+		private List<Integer> seconds = new ArrayList<>(Arrays.asList(60));
+	}
+
+	/**
+	 * Bytes alocados y tiempo de CPU por request, de la app y de cada endpoint con tags fijos, para una fraccion
+	 * sampleRate de los requests (entre 0 y 1). Requiere las extensiones de HotSpot del ThreadMXBean.
+	 */
+	@Data
+	@NoArgsConstructor
+	public static class Resources {
+		private boolean enabled;
+		private double sampleRate = 0.01;
+	}
+
+	/**
+	 * Requests mas lentos y fallidos mas recientes por ventana de window segundos, expuestos en el endpoint
+	 * {@code /slowrequests}. Solo se consideran lentos los que duran al menos thresholdMillis. Con jfr y apdex
+	 * habilitado se emite un evento de Flight Recorder por cada request que supera el tolerating de su endpoint.
+	 */
+	@Data
+	@NoArgsConstructor
+	public static class SlowRequests {
+		private boolean enabled;
+		private int slowest = 20;
+		private int failures = 50;
+		private int window = 60;
+		private long thresholdMillis = 500;
+		private boolean jfr;
+	}
+
+	/**
+	 * Uno de cada filterSampleEvery requests mide el tiempo del filtro fuera de la cadena en
+	 * {@code metrics.filter.overhead}; 0 para no medirlo.
+	 */
+	@Data
+	@NoArgsConstructor
+	public static class Overhead {
+		private int filterSampleEvery = 64;
 	}
 }
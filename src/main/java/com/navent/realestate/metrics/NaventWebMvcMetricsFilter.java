@@ -1,40 +1,35 @@
 package com.navent.realestate.metrics;
 
-import com.codahale.metrics.Meter;
-import com.navent.realestate.metrics.NaventMetricsProperties.Apdex;
-
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
 import org.springframework.http.HttpStatus;
-import org.springframework.util.ObjectUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.DispatcherServlet;
-import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.HandlerMapping;
 import org.springframework.web.servlet.handler.HandlerMappingIntrospector;
-import org.springframework.web.servlet.handler.MatchableHandlerMapping;
 import org.springframework.web.util.NestedServletException;
 
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
-import java.time.Duration;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Set;
-import java.util.function.Supplier;
-import java.util.stream.Collectors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 import io.micrometer.core.annotation.Timed;
-import io.micrometer.core.instrument.Counter;
-import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.LongTaskTimer;
 import io.micrometer.core.instrument.MeterRegistry;
-import io.micrometer.core.instrument.Tag;
-import io.micrometer.core.instrument.Tags;
 import io.micrometer.core.instrument.Timer;
 import io.micrometer.core.lang.NonNullApi;
 import io.micrometer.spring.TimedUtils;
@@ -43,97 +38,88 @@ import io.micrometer.spring.web.servlet.WebMvcTagsProvider;
 @NonNullApi
 @Order(Ordered.HIGHEST_PRECEDENCE + 2)
 public class NaventWebMvcMetricsFilter extends OncePerRequestFilter {
-	private static final String TIMING_SAMPLE = "navent.micrometer.timingSample";
+	static final String TIMING_SAMPLE = "navent.micrometer.timingSample";
+	private static final LongTaskTimer.Sample[] NO_LONG_TASK_SAMPLES = new LongTaskTimer.Sample[0];
 
 	private final MeterRegistry registry;
 	private final WebMvcTagsProvider tagsProvider;
-	private final String metricName;
-	private final boolean recordAsPercentiles;
-	private final HandlerMappingIntrospector mappingIntrospector;
-	private final NaventMetricsProperties naventProperties;
-	
-	private Timer appTimer;
-	private Meter appRequestRateCounter;
-	private Meter appResponseOkCounter;
-	private Meter appResponseNokCounter;
-
-	private Meter decayingAppApdexSatisfied;
-	private Meter decayingAppApdexTotal;
-	private Meter decayingAppApdexTolerating;
-
-	private Apdex apdex;
-	private Long apdexToleratingLimit;
+	private final RequestMetricsRecorder recorder;
+	private final SlowRequestRecorder slowRequests;
+	private final HandlerMetadataTable handlerMetadata;
+	private final int rejectStatus;
+	private final int retryAfter;
+	private final int overheadSampleEvery;
+	private final Timer overheadTimer;
+
+	private final boolean asyncTiming;
+	private LongAdder asyncInFlight;
+	private Timer asyncHandlerTimer;
+	private Timer asyncQueueTimer;
 
 	public NaventWebMvcMetricsFilter(MeterRegistry registry, WebMvcTagsProvider tagsProvider, String metricName,
-			boolean recordAsPercentiles, HandlerMappingIntrospector mappingIntrospector,
-			NaventMetricsProperties naventProperties) {
-		this.registry = registry;
+			boolean recordAsPercentiles, NaventMetricsProperties naventProperties, HandlerMetadataTable handlerMetadata) {
+		this(tagsProvider, new RequestMetricsRecorder(registry, metricName, recordAsPercentiles, naventProperties),
+				metricName, naventProperties, handlerMetadata);
+	}
 
+	/**
+	 * @param recorder shared with any other request filter of the app, so all of them feed the same window counters
+	 */
+	public NaventWebMvcMetricsFilter(WebMvcTagsProvider tagsProvider, RequestMetricsRecorder recorder,
+			String metricName, NaventMetricsProperties naventProperties, HandlerMetadataTable handlerMetadata) {
+		this.registry = recorder.getRegistry();
 		this.tagsProvider = tagsProvider;
-		this.metricName = metricName;
-		this.recordAsPercentiles = recordAsPercentiles;
-		this.mappingIntrospector = mappingIntrospector;
-		this.naventProperties = naventProperties;
+		this.recorder = recorder;
+		this.slowRequests = recorder.getSlowRequests();
+		this.handlerMetadata = handlerMetadata;
+		NaventMetricsProperties.Concurrency concurrency = naventProperties == null
+				? new NaventMetricsProperties.Concurrency() : naventProperties.getConcurrency();
+		this.rejectStatus = concurrency.getRejectStatus();
+		this.retryAfter = concurrency.getRetryAfter();
+		this.overheadSampleEvery = naventProperties == null ? 0
+				: naventProperties.getOverhead().getFilterSampleEvery();
+		this.overheadTimer = overheadSampleEvery <= 0 ? null
+				: Timer.builder("metrics.filter.overhead")
+						.description("Time spent by the metrics filter outside the filter chain, sampled")
+						.register(this.registry);
 
-		createMetrics();
+		asyncTiming = naventProperties == null || naventProperties.getAsync().isEnabled();
+		if (asyncTiming) {
+			createAsyncMetrics(metricName);
+		}
 	}
 
-	private void createMetrics() {
-		TimerConfig rootTimerConfig = new TimerConfig(getServerRequestName() + ".uri.root", this.recordAsPercentiles);
-		appTimer = getAppTimerBuilder(rootTimerConfig).register(this.registry);
-
-		appRequestRateCounter = new SmoothlyDecayingRollingCounterMeter(Duration.ofSeconds(60), 10);
-		FunctionCounter.builder(getServerRequestName() + ".uri.root.1.min.request.rate", appRequestRateCounter, c -> c.getCount())
-			.description("App 1 minute request rate")
-			.register(this.registry);
-
-		appResponseOkCounter = new SmoothlyDecayingRollingCounterMeter(Duration.ofSeconds(60), 10);
-		appResponseNokCounter = new SmoothlyDecayingRollingCounterMeter(Duration.ofSeconds(60), 10);
+	/**
+	 * @deprecated the handler is no longer resolved by the filter, {@link MetricsInterceptor} reports it. Without a
+	 *             {@link HandlerMetadataTable} bean to refresh, handlers are measured per request.
+	 */
+	@Deprecated
+	public NaventWebMvcMetricsFilter(MeterRegistry registry, WebMvcTagsProvider tagsProvider, String metricName,
+			boolean recordAsPercentiles, HandlerMappingIntrospector mappingIntrospector,
+			NaventMetricsProperties naventProperties) {
+		this(registry, tagsProvider, metricName, recordAsPercentiles, naventProperties, null);
+	}
 
-		FunctionCounter.builder(getServerRequestName() + ".uri.root.response.ok", appResponseOkCounter, c -> c.getCount())
-				.description("App response window counter")
+	private void createAsyncMetrics(String metricName) {
+		asyncInFlight = new LongAdder();
+		Gauge.builder(metricName + ".uri.root.async.in.flight", asyncInFlight, LongAdder::sum)
+				.description("App async requests waiting for completion")
 				.register(this.registry);
-		FunctionCounter.builder(getServerRequestName() + ".uri.root.response.nok", appResponseNokCounter, c -> c.getCount())
-				.description("App response window counter")
+		asyncHandlerTimer = Timer.builder(metricName + ".uri.root.async.handler")
+				.description("Time of async requests in the initial dispatch, until the handler went async")
+				.register(this.registry);
+		asyncQueueTimer = Timer.builder(metricName + ".uri.root.async.queue")
+				.description("Time of async requests from the end of the initial dispatch to completion")
 				.register(this.registry);
-
-		if (naventProperties != null) {
-			apdex = naventProperties.getApdex();
-
-			if (apdex.isEnabled()) {
-				apdexToleratingLimit = apdex.getMillis() * 4;
-				decayingAppApdexSatisfied = new SmoothlyDecayingRollingCounterMeter(Duration.ofSeconds(60), 10);
-				decayingAppApdexTolerating = new SmoothlyDecayingRollingCounterMeter(Duration.ofSeconds(60), 10);
-				decayingAppApdexTotal = new SmoothlyDecayingRollingCounterMeter(Duration.ofSeconds(60), 10);
-
-				FunctionCounter.builder(getServerRequestName() + ".uri.root.apdex.satisfied", decayingAppApdexSatisfied, c -> c.getCount())
-						.description("App apdex satisfied window counter")
-						.register(this.registry);
-				FunctionCounter.builder(getServerRequestName() + ".uri.root.apdex.tolerating", decayingAppApdexTolerating, c -> c.getCount())
-						.description("App apdex tolerating window counter").register(this.registry);
-				FunctionCounter.builder(getServerRequestName() + ".uri.root.apdex.total", decayingAppApdexTotal, c -> c.getCount())
-						.description("App apdex total window counter")
-						.register(this.registry);
-			}
-		}
 	}
 
 	@Override
 	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
 			throws ServletException, IOException {
-		HandlerExecutionChain handler = null;
-		try {
-			MatchableHandlerMapping matchableHandlerMapping = mappingIntrospector.getMatchableHandlerMapping(request);
-			if (matchableHandlerMapping != null) {
-				handler = matchableHandlerMapping.getHandler(request);
-			}
-		} catch (Exception e) {
-			logger.debug("Unable to time request", e);
-			filterChain.doFilter(request, response);
-			return;
-		}
-
-		final Object handlerObject = handler == null ? null : handler.getHandler();
+		// one in overheadSampleEvery requests measures the filter itself
+		boolean overheadSampled = overheadTimer != null
+				&& ThreadLocalRandom.current().nextInt(overheadSampleEvery) == 0;
+		long overheadStart = overheadSampled ? System.nanoTime() : 0;
 
 		// If this is the second invocation of the filter in an async request, we don't
 		// want to start sampling again (effectively bumping the active count on any
@@ -142,145 +128,180 @@ public class NaventWebMvcMetricsFilter extends OncePerRequestFilter {
 		// invocation.
 		TimingSampleContext timingContext = (TimingSampleContext) request.getAttribute(TIMING_SAMPLE);
 		if (timingContext == null) {
-			timingContext = new TimingSampleContext(request, handlerObject);
+			// The handler is not resolved here: MetricsInterceptor hands over the one the
+			// DispatcherServlet resolves, see handlerResolved
+			timingContext = recorder.started(new TimingSampleContext());
+			request.setAttribute(TIMING_SAMPLE, timingContext);
+			if (!recorder.admit(timingContext)) {
+				// shed load before the request reaches the DispatcherServlet
+				reject(response);
+				record(timingContext, request, response.getStatus(), null);
+				return;
+			}
 		}
 
+		long chainStart = overheadSampled ? System.nanoTime() : 0;
 		try {
 			filterChain.doFilter(request, response);
-
-			if (request.isAsyncSupported()) {
-				// this won't be "started" until after the first call to doFilter
-				if (request.isAsyncStarted()) {
-					request.setAttribute(TIMING_SAMPLE, timingContext);
-				}
-			}
+			long chainEnd = overheadSampled ? System.nanoTime() : 0;
 
 			if (!request.isAsyncStarted()) {
-				record(timingContext, response, request, handlerObject,
+				record(timingContext, request, response.getStatus(),
 						(Throwable) request.getAttribute(DispatcherServlet.EXCEPTION_ATTRIBUTE));
+				if (overheadSampled) {
+					recordOverhead(overheadStart, chainStart, chainEnd);
+				}
+				return;
+			}
+			// whatever this container thread runs next belongs to other requests
+			recorder.suspend(timingContext);
+			if (!timingContext.asyncListening) {
+				// The async dispatch doesn't go through this filter: the request is recorded,
+				// and its concurrency permits released, when the container completes it,
+				// including timeouts and errors
+				timingContext.asyncListening = true;
+				if (asyncTiming) {
+					timingContext.asyncStartedNanos = registry.config().clock().monotonicTime();
+					asyncInFlight.increment();
+				}
+				request.getAsyncContext().addListener(new AsyncTimingListener(timingContext, request, response));
+			}
+			if (overheadSampled) {
+				recordOverhead(overheadStart, chainStart, chainEnd);
 			}
 		} catch (NestedServletException e) {
 			response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
-			record(timingContext, response, request, handlerObject, e.getCause());
+			record(timingContext, request, response.getStatus(), e.getCause());
 			throw e;
 		} catch (ServletException | IOException | RuntimeException ex) {
-			record(timingContext, response, request, handlerObject, ex);
+			// the container answers 500 for whatever escapes the chain
+			record(timingContext, request, HttpStatus.INTERNAL_SERVER_ERROR.value(), ex);
 			throw ex;
 		}
 	}
 
-	private void record(TimingSampleContext timingContext, HttpServletResponse response, HttpServletRequest request,
-			Object handlerObject, Throwable cause) {
-		long appTime = timingContext.timerSample.stop(appTimer);
-		appRequestRateCounter.mark();
-
-		Meter appResponseCounter = (cause == null) ? appResponseOkCounter : appResponseNokCounter;
-		appResponseCounter.mark();
-
-		if (apdex.isEnabled()) {
-			decayingAppApdexTotal.mark();
-			if (appTime <= apdex.getMillis()) {
-				decayingAppApdexSatisfied.mark();
-			} else if (appTime > apdex.getMillis() && appTime <= apdexToleratingLimit) {
-				decayingAppApdexTolerating.mark();
-			}
+	/**
+	 * Attaches the handler resolved by the {@link DispatcherServlet} to the request being timed, so the filter
+	 * doesn't run its own handler mapping lookup. Only the first resolution of the original dispatch counts: later
+	 * error or async dispatches don't change the handler being measured.
+	 * 
+	 * @return false if the endpoint is over its concurrency limit: the rejection is already written to the response
+	 *         and the handler must not run
+	 */
+	static boolean handlerResolved(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		DispatcherType dispatcherType = request.getDispatcherType();
+		if (dispatcherType != DispatcherType.REQUEST && dispatcherType != DispatcherType.ASYNC) {
+			return true;
 		}
+		TimingSampleContext timingContext = (TimingSampleContext) request.getAttribute(TIMING_SAMPLE);
+		if (timingContext == null) {
+			return true;
+		}
+		if (dispatcherType == DispatcherType.ASYNC) {
+			// the async dispatch writing the result doesn't go through the filter, its resources are measured from
+			// here to handlerCompleted
+			timingContext.asyncDispatchStarted();
+			return true;
+		}
+		return timingContext.handlerResolved(request, response, handler);
 	}
 
-	private Timer.Builder getAppTimerBuilder(TimerConfig config) {
-		Timer.Builder builder = Timer.builder(config.getName())
-				.description("Timer of app servlet request")
-				.publishPercentileHistogram(config.histogram);
-		if (config.getPercentiles().length > 0) {
-			builder = builder.publishPercentiles(config.getPercentiles());
+	/**
+	 * Closes the resource segment {@link #handlerResolved} opened for an async dispatch.
+	 */
+	static void handlerCompleted(HttpServletRequest request) {
+		if (request.getDispatcherType() != DispatcherType.ASYNC) {
+			return;
+		}
+		TimingSampleContext timingContext = (TimingSampleContext) request.getAttribute(TIMING_SAMPLE);
+		if (timingContext != null) {
+			timingContext.asyncDispatchCompleted();
 		}
-		return builder;
 	}
 
-	private String getServerRequestName() {
-		return this.metricName;
+	private void recordOverhead(long overheadStart, long chainStart, long chainEnd) {
+		overheadTimer.record(chainStart - overheadStart + System.nanoTime() - chainEnd, TimeUnit.NANOSECONDS);
 	}
 
-	private static class TimerConfig {
-
-		private final String name;
-
-		private final Iterable<Tag> extraTags;
-
-		private final double[] percentiles;
-
-		private final boolean histogram;
-
-		TimerConfig(String name, boolean histogram) {
-			this.name = name;
-			this.extraTags = Collections.emptyList();
-			this.percentiles = new double[0];
-			this.histogram = histogram;
-		}
-
-		TimerConfig(Timed timed, Supplier<String> name) {
-			this.name = buildName(timed, name);
-			this.extraTags = Tags.of(timed.extraTags());
-			this.percentiles = timed.percentiles();
-			this.histogram = timed.histogram();
-		}
-
-		private String buildName(Timed timed, Supplier<String> name) {
-			if (timed.longTask() && timed.value().isEmpty()) {
-				// the user MUST name long task timers, we don't lump them in
-				// with regular
-				// timers with the same name
-				return null;
-			}
-			return (timed.value().isEmpty() ? name.get() : timed.value());
+	private void reject(HttpServletResponse response) {
+		response.setStatus(rejectStatus);
+		if (retryAfter > 0) {
+			response.setHeader("Retry-After", Integer.toString(retryAfter));
 		}
+	}
 
-		public String getName() {
-			return this.name;
+	void record(TimingSampleContext timingContext, HttpServletRequest request, int status, Throwable cause) {
+		request.removeAttribute(TIMING_SAMPLE);
+		timingContext.stopLongTaskTimers();
+		long nanos = recorder.stop(timingContext, status, cause);
+		long endNanos = timingContext.startNanos + nanos;
+		// the request details are only read for the few requests the flight recorder keeps
+		if (slowRequests != null && slowRequests.accepts(endNanos, nanos, status, cause)) {
+			slowRequests.record(endNanos, nanos, request.getMethod(),
+					(String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE), status, cause);
 		}
+	}
 
-		Iterable<Tag> getExtraTags() {
-			return this.extraTags;
+	private void recordAsync(TimingSampleContext timingContext, HttpServletRequest request, int status,
+			Throwable cause) {
+		if (asyncTiming) {
+			asyncInFlight.decrement();
+			long completedNanos = registry.config().clock().monotonicTime();
+			asyncHandlerTimer.record(timingContext.asyncStartedNanos - timingContext.startNanos,
+					TimeUnit.NANOSECONDS);
+			asyncQueueTimer.record(completedNanos - timingContext.asyncStartedNanos, TimeUnit.NANOSECONDS);
 		}
+		record(timingContext, request, status, cause);
+	}
 
-		double[] getPercentiles() {
-			return this.percentiles;
-		}
+	class TimingSampleContext extends RequestTiming {
+		private boolean asyncListening;
+		private long asyncStartedNanos;
+		private Object handler;
+		private LongTaskTimer.Sample[] longTaskTimerSamples = NO_LONG_TASK_SAMPLES;
 
-		boolean isHistogram() {
-			return this.histogram;
+		TimingSampleContext() {
+			super(registry);
 		}
 
-		@Override
-		public boolean equals(Object o) {
-			if (this == o) {
-				return true;
+		boolean handlerResolved(HttpServletRequest request, HttpServletResponse response, Object handlerObject) {
+			if (handler != null) {
+				return !isRejected();
 			}
-			if (o == null || getClass() != o.getClass()) {
+			handler = handlerObject;
+			HandlerMetadata metadata = handlerResolved(handlerMetadata, handlerObject, request.getMethod(),
+					(String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE));
+			if (isRejected()) {
+				reject(response);
 				return false;
 			}
-			TimerConfig other = (TimerConfig) o;
-			return ObjectUtils.nullSafeEquals(this.name, other.name);
+			if (resources != null) {
+				// work after the initial dispatch runs on other threads
+				AsyncResourceInterceptor.register(request, recorder, this);
+			}
+			if (metadata != null) {
+				longTaskTimerSamples = metadata.startLongTaskTimers(request, handlerObject, registry, tagsProvider);
+			} else {
+				longTaskTimerSamples = annotations(handlerObject)
+						.stream().filter(HandlerMetadata::isNamedLongTask).map(t -> LongTaskTimer.builder(t)
+								.tags(tagsProvider.httpLongRequestTags(request, handlerObject)).register(registry).start())
+						.toArray(LongTaskTimer.Sample[]::new);
+			}
+			return true;
 		}
 
-		@Override
-		public int hashCode() {
-			return ObjectUtils.nullSafeHashCode(this.name);
+		private void asyncDispatchStarted() {
+			recorder.resumeAsync(this);
 		}
-	}
 
-	private class TimingSampleContext {
-		private final Set<Timed> timedAnnotations;
-		private final Timer.Sample timerSample;
-		private final Collection<LongTaskTimer.Sample> longTaskTimerSamples;
-
-		TimingSampleContext(HttpServletRequest request, Object handlerObject) {
-			timedAnnotations = annotations(handlerObject);
-			timerSample = Timer.start(registry);
-			longTaskTimerSamples = timedAnnotations
-					.stream().filter(Timed::longTask).map(t -> LongTaskTimer.builder(t)
-							.tags(tagsProvider.httpLongRequestTags(request, handlerObject)).register(registry).start())
-					.collect(Collectors.toList());
+		private void asyncDispatchCompleted() {
+			recorder.suspendAsync(this);
+		}
+
+		private void stopLongTaskTimers() {
+			for (LongTaskTimer.Sample sample : longTaskTimerSamples) {
+				sample.stop();
+			}
 		}
 
 		private Set<Timed> annotations(Object handler) {
@@ -295,4 +316,47 @@ public class NaventWebMvcMetricsFilter extends OncePerRequestFilter {
 			return Collections.emptySet();
 		}
 	}
-}
\ No newline at end of file
+
+	private final class AsyncTimingListener implements AsyncListener {
+		private final TimingSampleContext timingContext;
+		private final HttpServletRequest request;
+		private final HttpServletResponse response;
+		private volatile Throwable cause;
+
+		AsyncTimingListener(TimingSampleContext timingContext, HttpServletRequest request,
+				HttpServletResponse response) {
+			this.timingContext = timingContext;
+			this.request = request;
+			this.response = response;
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			Throwable error = cause;
+			if (error == null) {
+				error = (Throwable) request.getAttribute(DispatcherServlet.EXCEPTION_ATTRIBUTE);
+			}
+			recordAsync(timingContext, request, response.getStatus(), error);
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			if (cause == null) {
+				cause = new TimeoutException("Async request timed out");
+			}
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			if (cause == null) {
+				cause = event.getThrowable();
+			}
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+			// starting async again drops the registered listeners
+			event.getAsyncContext().addListener(this);
+		}
+	}
+}
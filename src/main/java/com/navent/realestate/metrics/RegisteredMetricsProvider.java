@@ -0,0 +1,49 @@
+package com.navent.realestate.metrics;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.quigley.zabbixj.metrics.MetricsException;
+import com.quigley.zabbixj.metrics.MetricsKey;
+import com.quigley.zabbixj.metrics.MetricsProvider;
+
+import lombok.val;
+
+/**
+ * Informa a zabbix las metricas de un tipo que hayan sido agregadas a través de {@link Metrics}, con la macro
+ * {@code {#<TIPO>NAME}} (por ejemplo {@code {#GAUGENAME}}).
+ * <p>
+ * El JSON del discovery se arma solo cuando se registra una metrica nueva, ver {@link Metrics#getGeneration()}.
+ */
+public class RegisteredMetricsProvider implements MetricsProvider {
+
+	private final DiscoveryPayload discovery = new DiscoveryPayload();
+	private final ZabbixRegisteredMetricType type;
+	private final String macro;
+
+	public RegisteredMetricsProvider(ZabbixRegisteredMetricType type) {
+		this.type = type;
+		this.macro = "{#" + type.name().toUpperCase(Locale.ROOT) + "NAME}";
+	}
+
+	@Override
+	public Object getValue(MetricsKey key) throws MetricsException {
+		if ("discovery".equals(key.getKey())) {
+			return discovery.get(Metrics.getGeneration(), this::entries);
+		}
+		return null;
+	}
+
+	private List<Map<String, Object>> entries() {
+		return Metrics.getCustomMetricRegistryView().stream()
+				.filter(e -> e.getType().equals(type))
+				.map(e -> {
+					val entry = new HashMap<String, Object>(1);
+					entry.put(macro, e.getName());
+					return (Map<String, Object>) entry;
+				}).collect(Collectors.toList());
+	}
+}
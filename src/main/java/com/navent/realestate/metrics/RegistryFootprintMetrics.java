@@ -0,0 +1,67 @@
+package com.navent.realestate.metrics;
+
+import java.util.List;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.LongTaskTimer;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Publica la cantidad de meters del registry ({@code metrics.meters}) y una estimacion de la memoria que ocupan
+ * ({@code metrics.meters.footprint}): un costo fijo por tipo, el id con sus tags y, en timers y summaries con
+ * histograma, los buckets de su ventana.
+ * <p>
+ * La estimacion recorre todos los meters, asi que se recalcula solo cuando cambia la cantidad; el resto de las
+ * lecturas devuelven el ultimo valor.
+ */
+public class RegistryFootprintMetrics implements MeterBinder {
+	// objeto del meter, id, lista de tags y entrada del mapa del registry
+	private static final int METER_BYTES = 160;
+	// step values, contadores y el histograma sin buckets de timers y summaries
+	private static final int DISTRIBUTION_BYTES = 384;
+	// un long por bucket en cada uno de los 3 buffers de la ventana del histograma
+	private static final int BUCKET_BYTES = 3 * 8;
+
+	private int countedMeters = -1;
+	private long footprint;
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("metrics.meters", registry, r -> r.getMeters().size())
+				.description("Meters registered in the registry").register(registry);
+		Gauge.builder("metrics.meters.footprint", registry, this::footprint).baseUnit("bytes")
+				.description("Estimated heap used by the registered meters").register(registry);
+	}
+
+	private synchronized double footprint(MeterRegistry registry) {
+		List<Meter> meters = registry.getMeters();
+		if (meters.size() != countedMeters) {
+			long bytes = 0;
+			for (Meter meter : meters) {
+				bytes += estimatedBytes(meter);
+			}
+			footprint = bytes;
+			countedMeters = meters.size();
+		}
+		return footprint;
+	}
+
+	private static long estimatedBytes(Meter meter) {
+		Meter.Id id = meter.getId();
+		long bytes = METER_BYTES + 2L * id.getName().length() + MeterFootprint.tagBytes(id.getTagsAsIterable());
+		if (meter instanceof Timer) {
+			bytes += DISTRIBUTION_BYTES + BUCKET_BYTES * ((Timer) meter).takeSnapshot().histogramCounts().length;
+		} else if (meter instanceof DistributionSummary) {
+			bytes += DISTRIBUTION_BYTES
+					+ BUCKET_BYTES * ((DistributionSummary) meter).takeSnapshot().histogramCounts().length;
+		} else if (meter instanceof FunctionTimer || meter instanceof LongTaskTimer) {
+			bytes += DISTRIBUTION_BYTES;
+		}
+		return bytes;
+	}
+}
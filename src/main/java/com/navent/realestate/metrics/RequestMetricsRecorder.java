@@ -0,0 +1,240 @@
+package com.navent.realestate.metrics;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.navent.realestate.metrics.NaventMetricsProperties.Concurrency;
+import com.navent.realestate.metrics.NaventMetricsProperties.RollingLatency;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Nucleo de la medicion de requests de la app, independiente del stack web: timer de {@code .uri.root}, contadores
+ * por status, contadores de ventana y apdex de la app y del endpoint, requests en curso y, con
+ * {@code metrics.resources}, bytes alocados y CPU de una muestra de requests. Con {@code metrics.slowRequests}
+ * tambien crea el {@link SlowRequestRecorder}, que alimenta cada stack con los datos de su request.
+ * <p>
+ * {@link NaventWebMvcMetricsFilter} lo usa para servlets; un filtro no bloqueante llama a {@link #start()} al
+ * recibir el request y a {@link #stop(RequestTiming, int, Throwable)} cuando termina la respuesta, desde cualquier
+ * thread. Tiene que haber uno solo por registry, los contadores de ventana no se comparten entre instancias.
+ */
+public class RequestMetricsRecorder {
+	private final MeterRegistry registry;
+	private final Timer appTimer;
+	private final HttpStatusCounters statusCounters;
+	private final RequestWindowMetrics appMetrics;
+	private final LongAdder inFlight;
+	private final AdaptiveConcurrencyLimit appLimit;
+	private final ThreadResourceSampler resourceSampler;
+	private final ResourceUsageSummaries appResources;
+	private final SlowRequestRecorder slowRequests;
+
+	/**
+	 * @param recordAsPercentiles publica el histograma del timer de la app, salvo que se use metrics.rollingLatency
+	 */
+	public RequestMetricsRecorder(MeterRegistry registry, String metricName, boolean recordAsPercentiles,
+			NaventMetricsProperties naventProperties) {
+		this.registry = registry;
+
+		RollingLatency rollingLatency = null;
+		if (naventProperties != null && naventProperties.getRollingLatency().isEnabled()) {
+			rollingLatency = naventProperties.getRollingLatency();
+		}
+		// los percentiles de ventana reemplazan los buckets acumulados del timer de la app
+		appTimer = Timer.builder(metricName + ".uri.root")
+				.description("Timer of app requests")
+				.publishPercentileHistogram(recordAsPercentiles && rollingLatency == null)
+				.register(registry);
+		statusCounters = new HttpStatusCounters(registry,
+				naventProperties != null && naventProperties.getStatus().isExact());
+
+		Long apdexMillis = null;
+		if (naventProperties != null && naventProperties.getApdex().isEnabled()) {
+			apdexMillis = naventProperties.getApdex().getMillis();
+		}
+		appMetrics = new RequestWindowMetrics(registry, metricName + ".uri.root", Collections.emptyList(), "App",
+				Runtime.getRuntime().availableProcessors(), apdexMillis, rollingLatency,
+				naventProperties == null ? RollingWindows.DEFAULT : RollingWindows.of(naventProperties.getWindows()));
+
+		if (naventProperties == null || naventProperties.getAsync().isEnabled()) {
+			inFlight = new LongAdder();
+			Gauge.builder(metricName + ".uri.root.in.flight", inFlight, LongAdder::sum)
+					.description("App requests in flight")
+					.register(registry);
+		} else {
+			inFlight = null;
+		}
+
+		Concurrency concurrency = naventProperties == null ? null : naventProperties.getConcurrency();
+		appLimit = concurrency == null || !concurrency.isEnabled() ? null
+				: new AdaptiveConcurrencyLimit(registry, metricName + ".uri.root", Collections.emptyList(),
+						concurrency, concurrency.getMaxLimit());
+
+		resourceSampler = naventProperties == null ? null
+				: ThreadResourceSampler.create(naventProperties.getResources());
+		appResources = resourceSampler == null ? null
+				: new ResourceUsageSummaries(registry, metricName + ".uri.root", Collections.emptyList(), "App",
+						resourceSampler);
+
+		slowRequests = naventProperties == null || !naventProperties.getSlowRequests().isEnabled() ? null
+				: new SlowRequestRecorder(registry.config().clock(), naventProperties.getSlowRequests(),
+						naventProperties.getApdex());
+	}
+
+	public MeterRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * @return el registro de requests lentos, o null si {@code metrics.slowRequests} no esta habilitado
+	 */
+	public SlowRequestRecorder getSlowRequests() {
+		return slowRequests;
+	}
+
+	/**
+	 * @return el estado del request, para pasarlo a {@link #stop(RequestTiming, int, Throwable)}
+	 */
+	public RequestTiming start() {
+		return started(new RequestTiming(registry));
+	}
+
+	/**
+	 * Toma un lugar del limite de concurrencia de la app, si esta habilitado.
+	 * 
+	 * @return false si el request lo supera y hay que rechazarlo; igual se registra con
+	 *         {@link #stop(RequestTiming, int, Throwable)}
+	 */
+	public boolean admit(RequestTiming timing) {
+		return appLimit == null || timing.admit(appLimit);
+	}
+
+	<T extends RequestTiming> T started(T timing) {
+		if (inFlight != null) {
+			inFlight.increment();
+		}
+		if (resourceSampler != null) {
+			resourceSampler.start(timing);
+		}
+		return timing;
+	}
+
+	/**
+	 * Avisa que el request deja el thread actual sin terminar (paso a async), para no atribuirle lo que el thread
+	 * haga despues. Se llama desde el thread en el que se llamo a {@link #start()}.
+	 */
+	public void suspend(RequestTiming timing) {
+		if (timing.resources != null) {
+			resourceSampler.suspend(timing.resources);
+		}
+	}
+
+	/**
+	 * Vuelve a medir recursos en el thread actual, para un stack que retoma el request en otro thread y quiere
+	 * atribuirle ese trabajo. Cada {@code resume} tiene que cerrarse con {@link #suspend(RequestTiming)} o
+	 * {@link #stop(RequestTiming, int, Throwable)} en el mismo thread.
+	 */
+	public void resume(RequestTiming timing) {
+		if (timing.resources != null) {
+			resourceSampler.resume(timing.resources);
+		}
+	}
+
+	/**
+	 * Como {@link #resume(RequestTiming)} para el trabajo async que puede correr mientras el thread del dispatch
+	 * inicial todavia no salio del request, como el executor de un {@code Callable}. Los tramos async se suman aparte
+	 * y no pueden superponerse entre si: cada uno se cierra con {@link #suspendAsync(RequestTiming)} en el mismo
+	 * thread antes de abrir el siguiente.
+	 */
+	public void resumeAsync(RequestTiming timing) {
+		if (timing.resources != null) {
+			if (timing.asyncResources == null) {
+				timing.asyncResources = new ThreadResourceSampler.Segments();
+			}
+			resourceSampler.resume(timing.asyncResources);
+		}
+	}
+
+	/**
+	 * Cierra el tramo abierto con {@link #resumeAsync(RequestTiming)}.
+	 */
+	public void suspendAsync(RequestTiming timing) {
+		if (timing.asyncResources != null) {
+			resourceSampler.suspend(timing.asyncResources);
+		}
+	}
+
+	/**
+	 * Avisa que parte del trabajo del request corre en threads que no se pueden medir (el que completa un
+	 * {@code DeferredResult}): sus recursos se registran con {@code coverage=partial}.
+	 */
+	public void resourcesPartial(RequestTiming timing) {
+		timing.resourcesPartial = true;
+	}
+
+	/**
+	 * Registra el request terminado y libera sus lugares en los limites de concurrencia. Se llama una sola vez por
+	 * {@link RequestTiming}, tambien para los requests async. Un request rechazado cuenta como nok pero no entra en
+	 * el timer, los percentiles ni el apdex: es un 503 inmediato que bajaria la latencia de la app.
+	 * 
+	 * @param cause null si el request termino sin error
+	 * @return duracion del request en nanosegundos
+	 */
+	public long stop(RequestTiming timing, int status, Throwable cause) {
+		if (inFlight != null) {
+			inFlight.decrement();
+		}
+		boolean ok = cause == null && !timing.rejected;
+		statusCounters.increment(status);
+		long appTime;
+		if (timing.rejected) {
+			appTime = registry.config().clock().monotonicTime() - timing.startNanos;
+			appMetrics.recordRejected();
+			if (timing.endpointMetrics != null) {
+				timing.endpointMetrics.recordRejected();
+			}
+		} else {
+			appTime = timing.timerSample.stop(appTimer);
+			appMetrics.record(appTime, ok);
+			if (timing.endpointMetrics != null) {
+				timing.endpointMetrics.record(appTime, ok);
+			}
+		}
+		// solo se liberan los lugares tomados; un rechazado devuelve el de la app sin contar como error
+		if (timing.appLimit != null) {
+			if (timing.rejected) {
+				timing.appLimit.cancel();
+			} else {
+				timing.appLimit.release(appTime, ok);
+			}
+		}
+		if (timing.endpointLimit != null) {
+			timing.endpointLimit.release(appTime, ok);
+		}
+		if (timing.resources != null) {
+			recordResources(timing);
+		}
+		return appTime;
+	}
+
+	private void recordResources(RequestTiming timing) {
+		ThreadResourceSampler.Segments resources = timing.resources;
+		resourceSampler.suspend(resources);
+		long allocatedBytes = resources.allocatedBytes;
+		long cpuNanos = resources.cpuNanos;
+		boolean partial = timing.resourcesPartial;
+		ThreadResourceSampler.Segments async = timing.asyncResources;
+		if (async != null) {
+			// un tramo async que sigue abierto (un Callable que vencio, ya marcado parcial) se descarta
+			resourceSampler.suspend(async);
+			allocatedBytes += async.allocatedBytes;
+			cpuNanos += async.cpuNanos;
+		}
+		appResources.record(allocatedBytes, cpuNanos, partial);
+		if (timing.endpointResources != null) {
+			timing.endpointResources.record(allocatedBytes, cpuNanos, partial);
+		}
+	}
+}
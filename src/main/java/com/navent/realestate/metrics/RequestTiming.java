@@ -0,0 +1,68 @@
+package com.navent.realestate.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Estado de un request medido por {@link RequestMetricsRecorder}, sin nada del API de servlets: cada variante del
+ * filtro lo guarda donde le resulte natural (un atributo del request, el contexto del exchange) en lugar de usar
+ * thread-locals.
+ */
+public class RequestTiming {
+	final long startNanos;
+	final Timer.Sample timerSample;
+	RequestWindowMetrics endpointMetrics;
+	AdaptiveConcurrencyLimit appLimit;
+	AdaptiveConcurrencyLimit endpointLimit;
+	boolean rejected;
+	ResourceUsageSummaries endpointResources;
+	ThreadResourceSampler.Segments resources;
+	ThreadResourceSampler.Segments asyncResources;
+	boolean resourcesPartial;
+
+	RequestTiming(MeterRegistry registry) {
+		startNanos = registry.config().clock().monotonicTime();
+		timerSample = Timer.start(registry);
+	}
+
+	/**
+	 * Suma las metricas de ventana, los summaries de recursos y el limite de concurrencia del endpoint del handler,
+	 * si el handler esta en la tabla (que puede ser null). Si el endpoint no tiene lugar el request queda rechazado, ver {@link #isRejected()}.
+	 * 
+	 * @param method metodo HTTP del request
+	 * @param pattern patron del mapping que eligio el handler, para los mappings con mas de un patron o metodo
+	 * @return la metadata del handler, null si no es un handler method conocido
+	 */
+	HandlerMetadata handlerResolved(HandlerMetadataTable table, Object handler, String method, String pattern) {
+		HandlerMetadata metadata = table == null ? null : table.get(handler, method, pattern);
+		if (metadata != null) {
+			endpointMetrics = metadata.getEndpointMetrics();
+			endpointResources = metadata.getResourceUsage();
+			AdaptiveConcurrencyLimit limit = metadata.getConcurrencyLimit();
+			if (limit != null && !rejected) {
+				if (limit.tryAcquire()) {
+					endpointLimit = limit;
+				} else {
+					rejected = true;
+				}
+			}
+		}
+		return metadata;
+	}
+
+	boolean admit(AdaptiveConcurrencyLimit limit) {
+		if (limit.tryAcquire()) {
+			appLimit = limit;
+		} else {
+			rejected = true;
+		}
+		return !rejected;
+	}
+
+	/**
+	 * @return true si el request supero un limite de concurrencia y hay que responderlo sin procesarlo
+	 */
+	public boolean isRejected() {
+		return rejected;
+	}
+}
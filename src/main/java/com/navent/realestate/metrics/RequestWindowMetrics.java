@@ -0,0 +1,144 @@
+package com.navent.realestate.metrics;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import com.navent.realestate.metrics.NaventMetricsProperties.Apdex;
+import com.navent.realestate.metrics.NaventMetricsProperties.RollingLatency;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+
+/**
+ * Contadores de ventana de un conjunto de requests (toda la app o un endpoint): cantidad de requests, respuestas
+ * ok/nok con su tasa de error, con apdex habilitado satisfied/tolerating/total y, con {@code metrics.rollingLatency},
+ * los percentiles de latencia de la ventana.
+ * <p>
+ * Cada senal es un {@link WindowedCounter}, un anillo por resolucion de {@link RollingWindows} (normalmente uno):
+ * {@link #record(long, boolean)} hace un solo incremento por senal y anillo, y cada ventana es un
+ * {@link FunctionCounter} que suma los chunks que le tocan al leer. La ventana de un minuto conserva los nombres de
+ * siempre ({@code .1.min.request.rate}, {@code .response.ok}, {@code .apdex.total}) y las otras llevan la ventana en
+ * el nombre ({@code .10.sec.request.rate}, {@code .5.min.response.ok}).
+ * <p>
+ * Los {@link FunctionCounter} se registran al crear el bundle; {@link #record(long, boolean)} solo marca contadores
+ * ya resueltos, sin armar tags ni buscar en el registry.
+ */
+class RequestWindowMetrics {
+	private final WindowedCounter requestRate;
+	private final WindowedCounter responseOk;
+	private final WindowedCounter responseNok;
+
+	private final WindowedCounter apdexSatisfied;
+	private final WindowedCounter apdexTolerating;
+	private final WindowedCounter apdexTotal;
+	private final long apdexSatisfiedNanos;
+	private final long apdexToleratingNanos;
+
+	private final RollingLatencyPercentiles latency;
+
+	/**
+	 * @param prefix nombre base de los contadores, por ejemplo {@code http.server.requests.uri.root}
+	 * @param scope prefijo de las descripciones ({@code App}, {@code Endpoint})
+	 * @param apdexMillis umbral de satisfied en milisegundos, null para no medir apdex
+	 * @param rollingLatency configuracion de los percentiles, null para no medirlos
+	 * @param windows ventanas a publicar
+	 */
+	RequestWindowMetrics(MeterRegistry registry, String prefix, Iterable<Tag> tags, String scope, int stripes,
+			Long apdexMillis, RollingLatency rollingLatency, RollingWindows windows) {
+		requestRate = counter(windows, stripes);
+		responseOk = counter(windows, stripes);
+		responseNok = counter(windows, stripes);
+
+		for (Duration window : windows.getWindows()) {
+			String name = RollingWindows.name(window);
+			String legacyPrefix = RollingWindows.isOneMinute(window) ? prefix : prefix + "." + name;
+			String description = scope + " " + name.replace('.', ' ');
+
+			register(registry, prefix + "." + name + ".request.rate", tags, description + " request rate",
+					requestRate, window);
+			register(registry, legacyPrefix + ".response.ok", tags, description + " response window counter",
+					responseOk, window);
+			register(registry, legacyPrefix + ".response.nok", tags, description + " response window counter",
+					responseNok, window);
+			Gauge.builder(prefix + "." + name + ".error.ratio", this, m -> m.errorRatio(window))
+					.tags(tags)
+					.description(description + " ratio of nok responses")
+					.register(registry);
+		}
+
+		if (apdexMillis != null) {
+			apdexSatisfiedNanos = TimeUnit.MILLISECONDS.toNanos(apdexMillis);
+			apdexToleratingNanos = apdexSatisfiedNanos * Apdex.TOLERATING_FACTOR;
+			apdexSatisfied = counter(windows, stripes);
+			apdexTolerating = counter(windows, stripes);
+			apdexTotal = counter(windows, stripes);
+			for (Duration window : windows.getWindows()) {
+				String name = RollingWindows.name(window);
+				String legacyPrefix = RollingWindows.isOneMinute(window) ? prefix : prefix + "." + name;
+				String description = scope + " " + name.replace('.', ' ');
+				register(registry, legacyPrefix + ".apdex.satisfied", tags,
+						description + " apdex satisfied window counter", apdexSatisfied, window);
+				register(registry, legacyPrefix + ".apdex.tolerating", tags,
+						description + " apdex tolerating window counter", apdexTolerating, window);
+				register(registry, legacyPrefix + ".apdex.total", tags, description + " apdex total window counter",
+						apdexTotal, window);
+			}
+		} else {
+			apdexSatisfiedNanos = 0;
+			apdexToleratingNanos = 0;
+			apdexSatisfied = null;
+			apdexTolerating = null;
+			apdexTotal = null;
+		}
+
+		latency = rollingLatency == null ? null
+				: new RollingLatencyPercentiles(registry, prefix + ".latency", tags,
+						scope + " latency percentiles over the rolling window", rollingLatency);
+	}
+
+	void record(long durationNanos, boolean ok) {
+		requestRate.mark();
+		if (latency != null) {
+			latency.record(durationNanos);
+		}
+		(ok ? responseOk : responseNok).mark();
+
+		if (apdexTotal != null) {
+			apdexTotal.mark();
+			if (durationNanos <= apdexSatisfiedNanos) {
+				apdexSatisfied.mark();
+			} else if (durationNanos <= apdexToleratingNanos) {
+				apdexTolerating.mark();
+			}
+		}
+	}
+
+	/**
+	 * Un request rechazado por un limite de concurrencia: cuenta en el request rate y como nok, sin latencia ni
+	 * apdex.
+	 */
+	void recordRejected() {
+		requestRate.mark();
+		responseNok.mark();
+	}
+
+	private double errorRatio(Duration window) {
+		long nok = responseNok.getCount(window);
+		long total = responseOk.getCount(window) + nok;
+		return total == 0 ? 0 : (double) nok / total;
+	}
+
+	private static WindowedCounter counter(RollingWindows windows, int stripes) {
+		return new WindowedCounter(windows, stripes);
+	}
+
+	private static void register(MeterRegistry registry, String name, Iterable<Tag> tags, String description,
+			WindowedCounter counter, Duration window) {
+		FunctionCounter.builder(name, counter, c -> c.getCount(window))
+				.tags(tags)
+				.description(description)
+				.register(registry);
+	}
+}
@@ -0,0 +1,60 @@
+package com.navent.realestate.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Distribution summaries de bytes alocados y tiempo de CPU por request de la app o de un endpoint, alimentadas por
+ * los requests que mide {@link ThreadResourceSampler}. Llevan el tag {@code coverage}: {@code full} si se midio todo
+ * el request, {@code partial} si parte del trabajo corrio en threads que no se pueden medir.
+ */
+class ResourceUsageSummaries {
+	private final DistributionSummary allocated;
+	private final DistributionSummary cpu;
+	private final DistributionSummary partialAllocated;
+	private final DistributionSummary partialCpu;
+
+	/**
+	 * @param prefix nombre base, por ejemplo {@code http.server.requests.uri.endpoint}
+	 * @param scope prefijo de las descripciones ({@code App}, {@code Endpoint})
+	 */
+	ResourceUsageSummaries(MeterRegistry registry, String prefix, Iterable<Tag> tags, String scope,
+			ThreadResourceSampler sampler) {
+		Tags full = Tags.concat(tags, "coverage", "full");
+		Tags partial = Tags.concat(tags, "coverage", "partial");
+		allocated = !sampler.measuresAllocation() ? null : allocated(registry, prefix, full, scope);
+		partialAllocated = !sampler.measuresAllocation() ? null : allocated(registry, prefix, partial, scope);
+		cpu = !sampler.measuresCpu() ? null : cpu(registry, prefix, full, scope);
+		partialCpu = !sampler.measuresCpu() ? null : cpu(registry, prefix, partial, scope);
+	}
+
+	private static DistributionSummary allocated(MeterRegistry registry, String prefix, Tags tags, String scope) {
+		return DistributionSummary.builder(prefix + ".allocated.bytes")
+				.tags(tags)
+				.baseUnit("bytes")
+				.description(scope + " bytes allocated per sampled request")
+				.register(registry);
+	}
+
+	private static DistributionSummary cpu(MeterRegistry registry, String prefix, Tags tags, String scope) {
+		return DistributionSummary.builder(prefix + ".cpu.time")
+				.tags(tags)
+				.baseUnit("nanoseconds")
+				.description(scope + " CPU time per sampled request")
+				.register(registry);
+	}
+
+	/**
+	 * @param partial true si el request tuvo trabajo en threads que no se midieron
+	 */
+	void record(long allocatedBytes, long cpuNanos, boolean partial) {
+		if (allocated != null) {
+			(partial ? partialAllocated : allocated).record(allocatedBytes);
+		}
+		if (cpu != null) {
+			(partial ? partialCpu : cpu).record(cpuNanos);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package com.navent.realestate.metrics;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import com.github.rollingmetrics.histogram.OverflowResolver;
+import com.github.rollingmetrics.histogram.hdr.RollingHdrHistogram;
+import com.navent.realestate.metrics.NaventMetricsProperties.RollingLatency;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+
+/**
+ * p50/p90/p99/p999 de latencia de la ultima ventana, sobre un {@link RollingHdrHistogram} por chunks. Se publican
+ * como cuatro gauges {@code <name>} con tag {@code percentile}, en milisegundos, en lugar de los buckets
+ * acumulados desde el arranque de un timer con histograma.
+ * <p>
+ * Los valores se registran en microsegundos; el snapshot se cachea un segundo para que los cuatro gauges lean
+ * el mismo.
+ */
+class RollingLatencyPercentiles {
+	private static final double[] PERCENTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+	private final RollingHdrHistogram histogram;
+
+	RollingLatencyPercentiles(MeterRegistry registry, String name, Iterable<Tag> tags, String description,
+			RollingLatency config) {
+		histogram = RollingHdrHistogram.builder()
+				.resetReservoirPeriodicallyByChunks(Duration.ofSeconds(config.getWindow()), config.getChunks())
+				.withSignificantDigits(config.getSignificantDigits())
+				.withLowestDiscernibleValue(1)
+				.withHighestTrackableValue(TimeUnit.MILLISECONDS.toMicros(config.getHighestTrackableMillis()),
+						OverflowResolver.REDUCE_TO_HIGHEST_TRACKABLE)
+				.withPredefinedPercentiles(PERCENTILES)
+				.withSnapshotCachingDuration(Duration.ofSeconds(1))
+				.build();
+
+		for (int i = 0; i < PERCENTILES.length; i++) {
+			int index = i;
+			Gauge.builder(name, histogram, h -> h.getSnapshot().getValues()[index] / 1000d)
+					.tags(tags)
+					.tag("percentile", String.valueOf(PERCENTILES[i]))
+					.baseUnit("milliseconds")
+					.description(description)
+					.register(registry);
+		}
+	}
+
+	void record(long durationNanos) {
+		histogram.update(TimeUnit.NANOSECONDS.toMicros(durationNanos));
+	}
+
+	int getEstimatedFootprintInBytes() {
+		return histogram.getEstimatedFootprintInBytes();
+	}
+}
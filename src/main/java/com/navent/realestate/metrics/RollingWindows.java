@@ -0,0 +1,143 @@
+package com.navent.realestate.metrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.navent.realestate.metrics.NaventMetricsProperties.Windows;
+
+/**
+ * Ventanas que publica un {@link RequestWindowMetrics} y los anillos de los que salen. Cada senal tiene un solo
+ * {@link StripedRollingCounter} por resolucion y cada ventana se suma de sus chunks al leerla. Las ventanas se
+ * agrupan en resoluciones de menor a mayor: una resolucion usa chunks de la decima parte del maximo comun divisor de
+ * sus ventanas, mientras la mas larga no pase de {@value #MAX_CHUNKS} chunks. Las ventanas habituales (hasta 5
+ * minutos con una de 10 segundos, o solo la de un minuto) entran en una sola resolucion y cada request hace un unico
+ * incremento por senal.
+ */
+final class RollingWindows {
+	static final int MAX_CHUNKS = 300;
+
+	private static final Duration ONE_MINUTE = Duration.ofMinutes(1);
+
+	/**
+	 * Solo la ventana de un minuto, en 10 chunks de 6 segundos.
+	 */
+	static final RollingWindows DEFAULT = new RollingWindows(Collections.singletonList(ONE_MINUTE));
+
+	private final List<Duration> windows;
+	private final List<Resolution> resolutions;
+
+	RollingWindows(List<Duration> windows) {
+		if (windows.isEmpty()) {
+			throw new IllegalArgumentException("At least one window is required");
+		}
+		List<Duration> sorted = new ArrayList<>(windows);
+		for (Duration window : sorted) {
+			if (window.isZero() || window.isNegative() || window.toMillis() < 10 || window.toMillis() % 10 != 0) {
+				throw new IllegalArgumentException("Window " + window + " must be a positive multiple of 10ms");
+			}
+		}
+		Collections.sort(sorted);
+		List<Resolution> grouped = new ArrayList<>();
+		List<Duration> current = new ArrayList<>();
+		for (Duration window : sorted) {
+			current.add(window);
+			if (Resolution.chunks(current) > MAX_CHUNKS && current.size() > 1) {
+				current.remove(current.size() - 1);
+				grouped.add(new Resolution(current));
+				current = new ArrayList<>();
+				current.add(window);
+			}
+		}
+		grouped.add(new Resolution(current));
+		this.windows = Collections.unmodifiableList(new ArrayList<>(windows));
+		this.resolutions = Collections.unmodifiableList(grouped);
+	}
+
+	static RollingWindows of(Windows properties) {
+		List<Duration> windows = new ArrayList<>();
+		for (int seconds : properties.getSeconds()) {
+			windows.add(Duration.ofSeconds(seconds));
+		}
+		return new RollingWindows(windows);
+	}
+
+	List<Duration> getWindows() {
+		return windows;
+	}
+
+	List<Resolution> getResolutions() {
+		return resolutions;
+	}
+
+	/**
+	 * @return el indice de la resolucion de la que sale la ventana
+	 */
+	int resolutionOf(Duration window) {
+		for (int i = 0; i < resolutions.size(); i++) {
+			if (resolutions.get(i).windows.contains(window)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Unknown window " + window);
+	}
+
+	static boolean isOneMinute(Duration window) {
+		return ONE_MINUTE.equals(window);
+	}
+
+	/**
+	 * @return la ventana en el formato de los nombres de meters, por ejemplo {@code 10.sec} o {@code 15.min}
+	 */
+	static String name(Duration window) {
+		long seconds = window.getSeconds();
+		if (seconds % 60 == 0 && window.getNano() == 0) {
+			return (seconds / 60) + ".min";
+		}
+		return window.getNano() == 0 ? seconds + ".sec" : window.toMillis() + ".ms";
+	}
+
+	/**
+	 * Un anillo: chunks de la decima parte del maximo comun divisor de sus ventanas, del largo de la mas larga.
+	 */
+	static final class Resolution {
+		private final List<Duration> windows;
+		private final Duration chunk;
+		private final Duration longest;
+
+		Resolution(List<Duration> windows) {
+			this.windows = Collections.unmodifiableList(new ArrayList<>(windows));
+			this.chunk = Duration.ofMillis(gcdMillis(windows) / 10);
+			this.longest = windows.get(windows.size() - 1);
+		}
+
+		Duration getChunk() {
+			return chunk;
+		}
+
+		Duration getLongest() {
+			return longest;
+		}
+
+		int getChunks() {
+			return (int) (longest.toMillis() / chunk.toMillis());
+		}
+
+		private static long chunks(List<Duration> sorted) {
+			return sorted.get(sorted.size() - 1).toMillis() / (gcdMillis(sorted) / 10);
+		}
+
+		private static long gcdMillis(List<Duration> windows) {
+			long gcd = 0;
+			for (Duration window : windows) {
+				gcd = gcd(gcd, window.toMillis());
+			}
+			return gcd;
+		}
+
+		private static long gcd(long a, long b) {
+			return b == 0 ? a : gcd(b, a % b);
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package com.navent.realestate.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Un request lento o fallido guardado por {@link SlowRequestRecorder}. {@code uri} es el patron del mapping,
+ * {@code traceId} es null sin una traza activa y {@code exception} es null si el request no termino con error.
+ */
+@Data
+@AllArgsConstructor
+public class SlowRequest {
+	private long timestamp;
+	private String method;
+	private String uri;
+	private int status;
+	private long durationNanos;
+	private String thread;
+	private String traceId;
+	private String exception;
+}
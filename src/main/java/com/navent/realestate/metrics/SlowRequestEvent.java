@@ -0,0 +1,41 @@
+package com.navent.realestate.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Evento de JDK Flight Recorder para un request que supero el umbral de tolerating de apdex de su endpoint. Solo se
+ * carga desde {@link SlowRequestEvents}, si la JVM tiene {@code jdk.jfr}.
+ * <p>
+ * Compilar la libreria requiere un JDK con {@code jdk.jfr} (8u262 o posterior, u 11+); en ejecucion es opcional.
+ */
+@Name("com.navent.realestate.SlowRequest")
+@Label("Slow Request")
+@Category("Navent")
+@Description("Request over the apdex tolerating limit of its endpoint")
+@StackTrace(false)
+class SlowRequestEvent extends Event {
+	@Label("Method")
+	String method;
+
+	@Label("URI")
+	String uri;
+
+	@Label("Status")
+	int status;
+
+	@Label("Duration")
+	@Timespan(Timespan.NANOSECONDS)
+	long requestDuration;
+
+	@Label("Trace Id")
+	String traceId;
+
+	@Label("Exception")
+	String exception;
+}
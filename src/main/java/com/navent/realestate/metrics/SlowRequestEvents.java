@@ -0,0 +1,29 @@
+package com.navent.realestate.metrics;
+
+import org.springframework.util.ClassUtils;
+
+/**
+ * Unica clase que referencia a {@link SlowRequestEvent}, asi {@link SlowRequestRecorder} carga en JVMs sin
+ * {@code jdk.jfr}: {@link #emit} solo se llama si {@link #isSupported()} dio true.
+ */
+final class SlowRequestEvents {
+	private SlowRequestEvents() {
+	}
+
+	static boolean isSupported() {
+		return ClassUtils.isPresent("jdk.jfr.Event", SlowRequestEvents.class.getClassLoader());
+	}
+
+	static void emit(String method, String uri, int status, long durationNanos, String traceId, String exception) {
+		SlowRequestEvent event = new SlowRequestEvent();
+		if (event.isEnabled()) {
+			event.method = method;
+			event.uri = uri;
+			event.status = status;
+			event.requestDuration = durationNanos;
+			event.traceId = traceId;
+			event.exception = exception;
+			event.commit();
+		}
+	}
+}
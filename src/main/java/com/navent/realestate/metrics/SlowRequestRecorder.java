@@ -0,0 +1,287 @@
+package com.navent.realestate.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.navent.realestate.metrics.NaventMetricsProperties.Apdex;
+import com.navent.realestate.metrics.NaventMetricsProperties.SlowRequests;
+
+import brave.Tracing;
+import brave.propagation.TraceContext;
+import io.micrometer.core.instrument.Clock;
+
+/**
+ * Guarda, por ventana de {@code window} segundos, los {@code slowest} requests mas lentos y los {@code failures}
+ * fallidos mas recientes (excepcion o status 5xx), y se conserva la ventana anterior completa.
+ * <p>
+ * Sin locks: cada ventana es un arreglo fijo que se actualiza con CAS. Un request que no fallo y dura menos que
+ * {@code thresholdMillis} se descarta en {@link #accepts(long, long, int, Throwable)} con una comparacion, sin leer
+ * el reloj ni alocar; pasado el umbral tambien se descarta sin alocar si no supera al mas rapido de la ventana ya
+ * llena. Con {@code jfr} y apdex habilitado emite un evento de Flight Recorder por cada request que supera el
+ * umbral de tolerating de su endpoint, a traves de {@link SlowRequestEvents}.
+ */
+public class SlowRequestRecorder {
+	private static final Log logger = LogFactory.getLog(SlowRequestRecorder.class);
+
+	private final Clock clock;
+	private final long windowNanos;
+	private final int slowest;
+	private final int failures;
+	private final long thresholdNanos;
+	private final Apdex apdex;
+	private final long eventThresholdNanos;
+	private final AtomicReference<Window> current;
+
+	public SlowRequestRecorder(Clock clock, SlowRequests config, Apdex apdex) {
+		this.clock = clock;
+		this.windowNanos = TimeUnit.SECONDS.toNanos(config.getWindow());
+		this.slowest = config.getSlowest();
+		this.failures = config.getFailures();
+		this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(config.getThresholdMillis());
+		this.apdex = config.isJfr() && jfrAvailable(apdex) ? apdex : null;
+		this.eventThresholdNanos = this.apdex == null ? Long.MAX_VALUE : minToleratingNanos(apdex);
+		this.current = new AtomicReference<>(new Window(epoch(clock.monotonicTime()), null, slowest, failures));
+	}
+
+	/**
+	 * Filtro previo a {@link #record(long, long, String, String, int, Throwable)}, para no armar los datos del
+	 * request si no se va a guardar.
+	 * 
+	 * @param endNanos fin del request en el reloj monotonico del registry
+	 */
+	public boolean accepts(long endNanos, long durationNanos, int status, Throwable cause) {
+		if (cause != null || status >= 500 || durationNanos > eventThresholdNanos) {
+			return true;
+		}
+		return durationNanos >= thresholdNanos && durationNanos > window(endNanos).floorNanos;
+	}
+
+	/**
+	 * @param uri patron del mapping, o null si el request no llego a un handler
+	 */
+	public void record(long endNanos, long durationNanos, String method, String uri, int status, Throwable cause) {
+		String traceId = traceId();
+		String exception = cause == null ? null : cause.getClass().getName();
+		if (apdex != null && uri != null
+				&& durationNanos > TimeUnit.MILLISECONDS.toNanos(apdex.toleratingMillis(uri))) {
+			SlowRequestEvents.emit(method, uri, status, durationNanos, traceId, exception);
+		}
+
+		boolean failed = cause != null || status >= 500;
+		Window window = window(endNanos);
+		if (!failed && (durationNanos < thresholdNanos || durationNanos <= window.floorNanos)) {
+			return;
+		}
+		SlowRequest request = new SlowRequest(clock.wallTime(), method, uri == null ? "UNKNOWN" : uri, status,
+				durationNanos, Thread.currentThread().getName(), traceId, exception);
+		if (failed) {
+			window.addFailure(request);
+		}
+		if (durationNanos >= thresholdNanos) {
+			window.addSlow(request);
+		}
+	}
+
+	/**
+	 * @return la ventana actual y la anterior, la actual primero; los lentos de mayor a menor duracion y los fallidos
+	 *         del mas reciente al mas viejo
+	 */
+	public List<WindowSnapshot> snapshot() {
+		long monotonic = clock.monotonicTime();
+		long wall = clock.wallTime();
+		Window window = window(monotonic);
+		List<WindowSnapshot> snapshots = new ArrayList<>(2);
+		snapshots.add(snapshot(window, monotonic, wall));
+		Window previous = window.previous;
+		if (previous != null) {
+			snapshots.add(snapshot(previous, monotonic, wall));
+		}
+		return snapshots;
+	}
+
+	private WindowSnapshot snapshot(Window window, long monotonic, long wall) {
+		long start = wall - TimeUnit.NANOSECONDS.toMillis(monotonic - window.epoch * windowNanos);
+		return new WindowSnapshot(start, TimeUnit.NANOSECONDS.toSeconds(windowNanos), window.slowest(),
+				window.failures());
+	}
+
+	private Window window(long nanos) {
+		long epoch = epoch(nanos);
+		for (;;) {
+			Window window = current.get();
+			if (window.epoch >= epoch) {
+				return window;
+			}
+			Window next = new Window(epoch, window.epoch == epoch - 1 ? window : null, slowest, failures);
+			if (current.compareAndSet(window, next)) {
+				// solo se conserva una ventana anterior
+				window.previous = null;
+				return next;
+			}
+		}
+	}
+
+	private long epoch(long nanos) {
+		return nanos / windowNanos;
+	}
+
+	private static String traceId() {
+		Tracing tracing = Tracing.current();
+		if (tracing == null) {
+			return null;
+		}
+		TraceContext context = tracing.currentTraceContext().get();
+		return context == null ? null : context.traceIdString();
+	}
+
+	private static boolean jfrAvailable(Apdex apdex) {
+		if (!apdex.isEnabled()) {
+			logger.warn("metrics.slowRequests.jfr needs metrics.apdex.enabled, no JFR events will be emitted");
+			return false;
+		}
+		if (!SlowRequestEvents.isSupported()) {
+			logger.warn("metrics.slowRequests.jfr is enabled but this JVM has no jdk.jfr");
+			return false;
+		}
+		return true;
+	}
+
+	private static long minToleratingNanos(Apdex apdex) {
+		long millis = apdex.getMillis();
+		for (Long endpointMillis : apdex.getEndpoints().values()) {
+			millis = Math.min(millis, endpointMillis);
+		}
+		return TimeUnit.MILLISECONDS.toNanos(millis * Apdex.TOLERATING_FACTOR);
+	}
+
+	private static final class Window {
+		final long epoch;
+		volatile Window previous;
+		final AtomicReferenceArray<SlowRequest> slowest;
+		final AtomicReferenceArray<SlowRequest> failures;
+		final AtomicLong failureIndex = new AtomicLong();
+		// duracion del mas rapido de slowest una vez lleno; puede quedar atrasada, nunca por encima del real
+		volatile long floorNanos = -1;
+
+		Window(long epoch, Window previous, int slowest, int failures) {
+			this.epoch = epoch;
+			this.previous = previous;
+			this.slowest = new AtomicReferenceArray<>(slowest);
+			this.failures = new AtomicReferenceArray<>(failures);
+		}
+
+		void addFailure(SlowRequest request) {
+			if (failures.length() > 0) {
+				failures.set((int) (failureIndex.getAndIncrement() % failures.length()), request);
+			}
+		}
+
+		void addSlow(SlowRequest request) {
+			retry: for (;;) {
+				int minIndex = -1;
+				SlowRequest min = null;
+				for (int i = 0; i < slowest.length(); i++) {
+					SlowRequest slot = slowest.get(i);
+					if (slot == null) {
+						if (slowest.compareAndSet(i, null, request)) {
+							updateFloor();
+							return;
+						}
+						continue retry;
+					}
+					if (min == null || slot.getDurationNanos() < min.getDurationNanos()) {
+						min = slot;
+						minIndex = i;
+					}
+				}
+				if (min == null || request.getDurationNanos() <= min.getDurationNanos()) {
+					return;
+				}
+				if (slowest.compareAndSet(minIndex, min, request)) {
+					updateFloor();
+					return;
+				}
+			}
+		}
+
+		private void updateFloor() {
+			long floor = Long.MAX_VALUE;
+			for (int i = 0; i < slowest.length(); i++) {
+				SlowRequest slot = slowest.get(i);
+				if (slot == null) {
+					return;
+				}
+				floor = Math.min(floor, slot.getDurationNanos());
+			}
+			floorNanos = floor;
+		}
+
+		List<SlowRequest> slowest() {
+			List<SlowRequest> slow = new ArrayList<>(slowest.length());
+			for (int i = 0; i < slowest.length(); i++) {
+				SlowRequest slot = slowest.get(i);
+				if (slot != null) {
+					slow.add(slot);
+				}
+			}
+			slow.sort(Comparator.comparingLong(SlowRequest::getDurationNanos).reversed());
+			return slow;
+		}
+
+		List<SlowRequest> failures() {
+			List<SlowRequest> failed = new ArrayList<>(failures.length());
+			long last = failureIndex.get();
+			for (long i = last - 1; i >= Math.max(0, last - failures.length()); i--) {
+				SlowRequest slot = failures.get((int) (i % failures.length()));
+				if (slot != null) {
+					failed.add(slot);
+				}
+			}
+			return failed;
+		}
+	}
+
+	/**
+	 * Contenido de una ventana al momento de leerla.
+	 */
+	public static class WindowSnapshot {
+		private final long start;
+		private final long windowSeconds;
+		private final List<SlowRequest> slowest;
+		private final List<SlowRequest> failures;
+
+		WindowSnapshot(long start, long windowSeconds, List<SlowRequest> slowest, List<SlowRequest> failures) {
+			this.start = start;
+			this.windowSeconds = windowSeconds;
+			this.slowest = slowest;
+			this.failures = failures;
+		}
+
+		/**
+		 * @return inicio de la ventana en milisegundos desde epoch
+		 */
+		public long getStart() {
+			return start;
+		}
+
+		public long getWindowSeconds() {
+			return windowSeconds;
+		}
+
+		public List<SlowRequest> getSlowest() {
+			return slowest;
+		}
+
+		public List<SlowRequest> getFailures() {
+			return failures;
+		}
+	}
+}
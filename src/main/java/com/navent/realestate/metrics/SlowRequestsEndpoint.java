@@ -0,0 +1,26 @@
+package com.navent.realestate.metrics;
+
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+
+import com.navent.realestate.metrics.SlowRequestRecorder.WindowSnapshot;
+
+/**
+ * Endpoint de actuator {@code /slowrequests} con el contenido de {@link SlowRequestRecorder}: los requests mas lentos
+ * y los fallidos mas recientes de la ventana actual y de la anterior. Es sensible como el resto de los endpoints
+ * con datos de requests.
+ */
+public class SlowRequestsEndpoint extends AbstractEndpoint<List<WindowSnapshot>> {
+	private final SlowRequestRecorder recorder;
+
+	public SlowRequestsEndpoint(SlowRequestRecorder recorder) {
+		super("slowrequests", true);
+		this.recorder = recorder;
+	}
+
+	@Override
+	public List<WindowSnapshot> invoke() {
+		return recorder.snapshot();
+	}
+}
@@ -5,6 +5,11 @@ import java.time.Duration;
 import com.codahale.metrics.Meter;
 import com.github.rollingmetrics.counter.SmoothlyDecayingRollingCounter;
 
+/**
+ * @deprecated reemplazado por {@link StripedRollingCounter}, que no arrastra los EWMA de {@link Meter} ni compite
+ * por un unico contador entre todos los threads.
+ */
+@Deprecated
 public class SmoothlyDecayingRollingCounterMeter extends Meter {
 	private SmoothlyDecayingRollingCounter windowCounter;
 
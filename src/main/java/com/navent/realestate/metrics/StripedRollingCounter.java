@@ -0,0 +1,173 @@
+package com.navent.realestate.metrics;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Contador de ventana deslizante con la misma semantica que {@link com.github.rollingmetrics.counter.SmoothlyDecayingRollingCounter}:
+ * la ventana se divide en chunks y el chunk mas viejo decae en forma proporcional al tiempo transcurrido del chunk actual.
+ * <p>
+ * Cada chunk esta repartido en stripes indexados por thread, de modo que {@link #mark()} no compite con otros cores
+ * y no aloca memoria. Cada celda guarda en los bits altos la epoca del chunk al que pertenece, asi el reseteo de un
+ * chunk vencido se hace con el mismo CAS que suma y no hay que limpiar la ventana desde afuera.
+ * <p>
+ * Un thread que se demora entre leer el reloj y el CAS puede encontrar su celda ya tomada por un chunk posterior:
+ * ese mark cae fuera de la ventana y se descarta, en lugar de pisar el chunk nuevo. Las epocas tienen
+ * {@value #EPOCH_BITS} bits y se comparan con aritmetica circular; una celda solo se considera posterior si esta
+ * una cantidad entera de vueltas del ring adelante, a lo sumo {@value #MAX_LEAD_RINGS}. Cualquier otra diferencia es
+ * una celda vieja cuya epoca dio la vuelta, y se reemplaza.
+ */
+public class StripedRollingCounter {
+	private static final int EPOCH_BITS = 24;
+	private static final int COUNT_BITS = Long.SIZE - EPOCH_BITS;
+	private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+	private static final long EPOCH_MASK = (1L << EPOCH_BITS) - 1;
+	private static final int MAX_LEAD_RINGS = 4;
+
+	// 8 longs = 64 bytes entre stripes para que dos cores no escriban la misma linea de cache
+	private static final int PADDING = 8;
+
+	private final LongSupplier ticker;
+	private final long startNanos;
+	private final long chunkNanos;
+	private final int numberChunks;
+	private final int ringSize;
+	private final long maxLeadEpochs;
+	private final int stripeMask;
+	private final int stripeStride;
+	private final AtomicLongArray cells;
+
+	public StripedRollingCounter(Duration rollingWindow, int numberChunks) {
+		this(rollingWindow, numberChunks, Runtime.getRuntime().availableProcessors());
+	}
+
+	public StripedRollingCounter(Duration rollingWindow, int numberChunks, int stripes) {
+		this(rollingWindow, numberChunks, stripes, System::nanoTime);
+	}
+
+	StripedRollingCounter(Duration rollingWindow, int numberChunks, int stripes, LongSupplier ticker) {
+		if (numberChunks < 1) {
+			throw new IllegalArgumentException("numberChunks must be positive");
+		}
+		if (rollingWindow.toNanos() < numberChunks) {
+			throw new IllegalArgumentException("rollingWindow is too short for " + numberChunks + " chunks");
+		}
+		this.ticker = ticker;
+		this.startNanos = ticker.getAsLong();
+		this.chunkNanos = rollingWindow.toNanos() / numberChunks;
+		this.numberChunks = numberChunks;
+		this.ringSize = numberChunks + 1;
+		this.maxLeadEpochs = Math.min((long) ringSize * MAX_LEAD_RINGS, EPOCH_MASK >> 1);
+		int stripeCount = stripeCount(stripes);
+		this.stripeMask = stripeCount - 1;
+		this.stripeStride = ringSize + PADDING;
+		this.cells = new AtomicLongArray(stripeCount * stripeStride);
+	}
+
+	public void mark() {
+		mark(1);
+	}
+
+	/**
+	 * @param n cantidad a sumar, no negativa
+	 */
+	public void mark(long n) {
+		long epoch = currentEpoch(ticker.getAsLong());
+		int index = stripe() * stripeStride + (int) (epoch % ringSize);
+		long tag = (epoch & EPOCH_MASK) << COUNT_BITS;
+		for (;;) {
+			long current = cells.get(index);
+			long lead = lead(current, epoch);
+			long next;
+			if (lead == 0) {
+				next = current + n;
+			} else if (lead > 0 && lead <= maxLeadEpochs && lead % ringSize == 0) {
+				// la celda ya es de un chunk posterior, el de este mark ya salio de la ventana
+				return;
+			} else {
+				next = tag | n;
+			}
+			if (cells.compareAndSet(index, current, next)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return cuantas epocas adelante de epoch esta la celda, negativo si es anterior, modulo 2^{@value #EPOCH_BITS}
+	 */
+	private static long lead(long cell, long epoch) {
+		long delta = (cell >>> COUNT_BITS) - (epoch & EPOCH_MASK);
+		// extiende el signo de la diferencia de EPOCH_BITS bits
+		return (delta << COUNT_BITS) >> COUNT_BITS;
+	}
+
+	/**
+	 * @return la suma de la ventana, con el chunk mas viejo ponderado por la fraccion que todavia cae dentro de ella
+	 */
+	public long getCount() {
+		return getCount(numberChunks);
+	}
+
+	/**
+	 * Suma una ventana mas corta que la del contador con los mismos chunks, asi varias ventanas salen de un solo
+	 * contador sin agregar trabajo a {@link #mark()}.
+	 * 
+	 * @param window multiplo de la duracion de un chunk, hasta la ventana del contador
+	 * @return la suma de la ventana, con el chunk mas viejo ponderado como en {@link #getCount()}
+	 */
+	public long getCount(Duration window) {
+		long windowNanos = window.toNanos();
+		if (windowNanos <= 0 || windowNanos % chunkNanos != 0 || windowNanos / chunkNanos > numberChunks) {
+			throw new IllegalArgumentException(window + " is not a multiple of the chunk duration up to the window");
+		}
+		return getCount((int) (windowNanos / chunkNanos));
+	}
+
+	private long getCount(int chunks) {
+		long elapsed = ticker.getAsLong() - startNanos;
+		long epoch = elapsed / chunkNanos;
+		double expiredFraction = (double) (elapsed % chunkNanos) / chunkNanos;
+
+		long sum = 0;
+		for (long e = Math.max(0, epoch - chunks + 1); e <= epoch; e++) {
+			sum += chunkSum(e);
+		}
+		long oldest = epoch - chunks;
+		if (oldest >= 0) {
+			sum += Math.round(chunkSum(oldest) * (1d - expiredFraction));
+		}
+		return sum;
+	}
+
+	private long chunkSum(long epoch) {
+		int slot = (int) (epoch % ringSize);
+		long tag = (epoch & EPOCH_MASK) << COUNT_BITS;
+		long sum = 0;
+		for (int stripe = 0; stripe <= stripeMask; stripe++) {
+			long value = cells.get(stripe * stripeStride + slot);
+			if ((value & ~COUNT_MASK) == tag) {
+				sum += value & COUNT_MASK;
+			}
+		}
+		return sum;
+	}
+
+	private long currentEpoch(long nanos) {
+		return (nanos - startNanos) / chunkNanos;
+	}
+
+	private int stripe() {
+		long id = Thread.currentThread().getId();
+		return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & stripeMask;
+	}
+
+	private static int stripeCount(int stripes) {
+		int count = 1;
+		while (count < stripes) {
+			count <<= 1;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,174 @@
+package com.navent.realestate.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.navent.realestate.metrics.NaventMetricsProperties.Cardinality;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.config.MeterFilter;
+
+/**
+ * Limita la cantidad de combinaciones de tags distintas por nombre de meter. Pasado el limite, las combinaciones
+ * nuevas se registran con el valor {@value #OTHER} en los tags de {@code metrics.cardinality.overflowTags} (o en
+ * todos, si el meter no tiene ninguno de ellos), asi un scanner o un path sin mapping no crea un timer por url.
+ * Los meters propios de la libreria bajo {@code <metricName>.uri.} (root y endpoint) no se limitan: tienen uno por
+ * patron del mapping y plegarlos mezclaria endpoints distintos.
+ * <p>
+ * Micrometer pasa los filtros en cada busqueda del meter, no solo al registrarlo, asi que las combinaciones
+ * rechazadas tambien se recuerdan con su id plegado, hasta el mismo limite por nombre: cada una se cuenta y se
+ * pliega una sola vez. Pasado ese segundo limite las rechazadas nuevas se pliegan y se cuentan en cada busqueda.
+ * <p>
+ * Como {@link MeterBinder} publica {@code metrics.cardinality.rejected{name}}, las combinaciones registradas y una
+ * estimacion de la memoria que usa para recordarlas.
+ */
+public class TagCardinalityLimiter implements MeterFilter, MeterBinder {
+	public static final String OTHER = "OTHER";
+
+	// nodo del set concurrente y referencia a Tags, los tags se estiman con MeterFootprint
+	private static final int COMBINATION_BYTES = 64;
+	// Meter.Id plegado: el id, su Tags y el array, los Tag con OTHER se cuentan aparte
+	private static final int FOLDED_ID_BYTES = 96;
+
+	private final int defaultLimit;
+	private final Map<String, Integer> limits;
+	private final Set<String> overflowTags;
+	private final String ownPrefix;
+
+	private final Map<String, Set<Iterable<Tag>>> combinations = new ConcurrentHashMap<>();
+	private final Map<String, Map<Iterable<Tag>, Meter.Id>> folded = new ConcurrentHashMap<>();
+	private final Map<String, AtomicLong> rejected = new ConcurrentHashMap<>();
+	private final AtomicInteger registered = new AtomicInteger();
+	private final AtomicLong footprint = new AtomicLong();
+	private volatile MeterRegistry registry;
+
+	/**
+	 * @param metricName nombre base de los meters de requests, sus {@code .uri.root} y {@code .uri.endpoint} quedan
+	 *            afuera del limite
+	 */
+	public TagCardinalityLimiter(Cardinality cardinality, String metricName) {
+		this.ownPrefix = metricName + ".uri.";
+		this.defaultLimit = cardinality.getMaxTagCombinations();
+		this.limits = cardinality.getLimits();
+		this.overflowTags = Collections.unmodifiableSet(new HashSet<>(cardinality.getOverflowTags()));
+	}
+
+	@Override
+	public Meter.Id map(Meter.Id id) {
+		Iterable<Tag> tags = id.getTagsAsIterable();
+		if (!tags.iterator().hasNext() || isOwnMeter(id.getName())) {
+			return id;
+		}
+		Set<Iterable<Tag>> known = combinations.computeIfAbsent(id.getName(), name -> ConcurrentHashMap.newKeySet());
+		if (known.contains(tags)) {
+			return id;
+		}
+		if (known.size() < limit(id.getName()) && known.add(tags)) {
+			registered.incrementAndGet();
+			footprint.addAndGet(estimatedBytes(tags));
+			return id;
+		}
+		if (isFolded(tags)) {
+			// ya viene reemplazado por OTHER, por ejemplo desde el registry compuesto hacia los hijos
+			return id;
+		}
+		Map<Iterable<Tag>, Meter.Id> foldedIds = folded.computeIfAbsent(id.getName(),
+				name -> new ConcurrentHashMap<>());
+		Meter.Id overflow = foldedIds.get(tags);
+		if (overflow != null) {
+			return overflow;
+		}
+		overflow = overflow(id);
+		if (foldedIds.size() < limit(id.getName())) {
+			Meter.Id previous = foldedIds.putIfAbsent(tags, overflow);
+			if (previous != null) {
+				return previous;
+			}
+			footprint.addAndGet(estimatedBytes(tags) + FOLDED_ID_BYTES);
+		}
+		reject(id.getName());
+		return overflow;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		this.registry = registry;
+		Gauge.builder("metrics.cardinality.combinations", registered, AtomicInteger::get)
+				.description("Distinct tag combinations tracked by the cardinality limiter").register(registry);
+		Gauge.builder("metrics.cardinality.footprint", footprint, AtomicLong::get).baseUnit("bytes")
+				.description("Estimated heap used by the cardinality limiter").register(registry);
+		rejected.forEach((name, count) -> registerRejected(registry, name, count));
+	}
+
+	private int limit(String name) {
+		return limits.getOrDefault(name, defaultLimit);
+	}
+
+	private void reject(String name) {
+		AtomicLong count = rejected.get(name);
+		if (count == null) {
+			AtomicLong created = new AtomicLong();
+			count = rejected.putIfAbsent(name, created);
+			if (count == null) {
+				count = created;
+				MeterRegistry bound = registry;
+				if (bound != null) {
+					registerRejected(bound, name, created);
+				}
+			}
+		}
+		count.incrementAndGet();
+	}
+
+	private static void registerRejected(MeterRegistry registry, String name, AtomicLong count) {
+		FunctionCounter.builder("metrics.cardinality.rejected", count, AtomicLong::get).tag("name", name)
+				.description("Distinct meter ids folded into the " + OTHER + " bucket, every lookup once the folded ids "
+						+ "remembered for the name reach its limit")
+				.register(registry);
+	}
+
+	private Meter.Id overflow(Meter.Id id) {
+		boolean hasOverflowTag = false;
+		for (Tag tag : id.getTagsAsIterable()) {
+			if (overflowTags.contains(tag.getKey())) {
+				hasOverflowTag = true;
+				break;
+			}
+		}
+		List<Tag> folded = new ArrayList<>();
+		for (Tag tag : id.getTagsAsIterable()) {
+			boolean fold = !hasOverflowTag || overflowTags.contains(tag.getKey());
+			folded.add(fold ? Tag.of(tag.getKey(), OTHER) : tag);
+		}
+		return id.replaceTags(folded);
+	}
+
+	private static boolean isFolded(Iterable<Tag> tags) {
+		for (Tag tag : tags) {
+			if (OTHER.equals(tag.getValue())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isOwnMeter(String name) {
+		return name.startsWith("metrics.cardinality.") || name.startsWith(ownPrefix);
+	}
+
+	private static long estimatedBytes(Iterable<Tag> tags) {
+		return COMBINATION_BYTES + MeterFootprint.tagBytes(tags);
+	}
+}
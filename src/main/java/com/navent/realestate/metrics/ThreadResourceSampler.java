@@ -0,0 +1,127 @@
+package com.navent.realestate.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.navent.realestate.metrics.NaventMetricsProperties.Resources;
+
+/**
+ * Lee los bytes alocados y el tiempo de CPU del thread actual con las extensiones de HotSpot de
+ * {@link com.sun.management.ThreadMXBean}, para una fraccion de los requests.
+ * <p>
+ * Los contadores son por thread, asi que se miden tramos: cada tramo empieza y termina en el mismo thread y se suma
+ * al total del request. Un request async cierra su tramo al salir del dispatch inicial y mide aparte el executor de
+ * un {@code Callable} y el dispatch async, ver {@link AsyncResourceInterceptor}.
+ */
+final class ThreadResourceSampler {
+	private static final Log logger = LogFactory.getLog(ThreadResourceSampler.class);
+
+	private final com.sun.management.ThreadMXBean threadBean;
+	private final boolean allocation;
+	private final boolean cpu;
+	private final double sampleRate;
+
+	private ThreadResourceSampler(com.sun.management.ThreadMXBean threadBean, boolean allocation, boolean cpu,
+			double sampleRate) {
+		this.threadBean = threadBean;
+		this.allocation = allocation;
+		this.cpu = cpu;
+		this.sampleRate = sampleRate;
+	}
+
+	/**
+	 * Habilita la medicion en el {@link java.lang.management.ThreadMXBean} si hace falta.
+	 * 
+	 * @return null si esta deshabilitado o la JVM no soporta ninguna de las dos mediciones
+	 */
+	static ThreadResourceSampler create(Resources resources) {
+		if (!resources.isEnabled() || resources.getSampleRate() <= 0) {
+			return null;
+		}
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			logger.warn("metrics.resources needs the HotSpot ThreadMXBean, not available in this JVM");
+			return null;
+		}
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+		boolean allocation = threadBean.isThreadAllocatedMemorySupported();
+		if (allocation && !threadBean.isThreadAllocatedMemoryEnabled()) {
+			threadBean.setThreadAllocatedMemoryEnabled(true);
+		}
+		boolean cpu = threadBean.isCurrentThreadCpuTimeSupported();
+		if (cpu && !threadBean.isThreadCpuTimeEnabled()) {
+			threadBean.setThreadCpuTimeEnabled(true);
+		}
+		if (!allocation && !cpu) {
+			logger.warn("metrics.resources is enabled but this JVM measures neither allocation nor CPU per thread");
+			return null;
+		}
+		return new ThreadResourceSampler(threadBean, allocation, cpu, Math.min(1, resources.getSampleRate()));
+	}
+
+	/**
+	 * Decide si se mide el request y, si se mide, abre su primer tramo en el thread actual.
+	 */
+	void start(RequestTiming timing) {
+		if (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate) {
+			timing.resources = new Segments();
+			resume(timing.resources);
+		}
+	}
+
+	/**
+	 * Abre un tramo en el thread actual, si no hay uno abierto.
+	 */
+	void resume(Segments segments) {
+		if (segments.thread != 0) {
+			return;
+		}
+		Thread thread = Thread.currentThread();
+		segments.thread = thread.getId();
+		segments.allocatedMark = allocation ? threadBean.getThreadAllocatedBytes(thread.getId()) : 0;
+		segments.cpuMark = cpu ? threadBean.getCurrentThreadCpuTime() : 0;
+	}
+
+	/**
+	 * Cierra el tramo abierto y lo suma al total. Si el thread actual no es el que lo abrio el tramo se descarta: la
+	 * diferencia mezclaria contadores de dos threads.
+	 */
+	void suspend(Segments segments) {
+		if (segments.thread == 0) {
+			return;
+		}
+		Thread thread = Thread.currentThread();
+		if (thread.getId() == segments.thread) {
+			if (allocation) {
+				segments.allocatedBytes += threadBean.getThreadAllocatedBytes(thread.getId()) - segments.allocatedMark;
+			}
+			if (cpu) {
+				segments.cpuNanos += threadBean.getCurrentThreadCpuTime() - segments.cpuMark;
+			}
+		}
+		segments.thread = 0;
+	}
+
+	boolean measuresAllocation() {
+		return allocation;
+	}
+
+	boolean measuresCpu() {
+		return cpu;
+	}
+
+	/**
+	 * Tramos sucesivos de un request, de a uno abierto por vez. El trabajo que puede correr en paralelo al dispatch
+	 * inicial se acumula en otra instancia.
+	 */
+	static final class Segments {
+		private long thread;
+		private long allocatedMark;
+		private long cpuMark;
+		long allocatedBytes;
+		long cpuNanos;
+	}
+}
@@ -0,0 +1,38 @@
+package com.navent.realestate.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import com.quigley.zabbixj.metrics.MetricsException;
+import com.quigley.zabbixj.metrics.MetricsKey;
+import com.quigley.zabbixj.metrics.MetricsProvider;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Mide cuanto tarda cada pedido de discovery del agente de zabbix a un {@link MetricsProvider}, en
+ * {@code metrics.discovery{provider}}. Los pedidos que no son de discovery pasan sin medir.
+ */
+public class TimedMetricsProvider implements MetricsProvider {
+	private final MetricsProvider delegate;
+	private final Timer discoveryTimer;
+
+	public TimedMetricsProvider(String provider, MetricsProvider delegate, MeterRegistry registry) {
+		this.delegate = delegate;
+		this.discoveryTimer = Timer.builder("metrics.discovery").tag("provider", provider)
+				.description("Time to answer a zabbix discovery request").register(registry);
+	}
+
+	@Override
+	public Object getValue(MetricsKey key) throws MetricsException {
+		if (!"discovery".equals(key.getKey())) {
+			return delegate.getValue(key);
+		}
+		long start = System.nanoTime();
+		try {
+			return delegate.getValue(key);
+		} finally {
+			discoveryTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package com.navent.realestate.metrics;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Una senal de {@link RequestWindowMetrics}: un {@link StripedRollingCounter} por resolucion de
+ * {@link RollingWindows}, normalmente uno solo. {@link #mark()} incrementa una vez cada anillo y
+ * {@link #getCount(Duration)} suma los chunks de la ventana al leer.
+ */
+final class WindowedCounter {
+	private final RollingWindows windows;
+	private final StripedRollingCounter[] rings;
+
+	WindowedCounter(RollingWindows windows, int stripes) {
+		this.windows = windows;
+		List<RollingWindows.Resolution> resolutions = windows.getResolutions();
+		this.rings = new StripedRollingCounter[resolutions.size()];
+		for (int i = 0; i < rings.length; i++) {
+			RollingWindows.Resolution resolution = resolutions.get(i);
+			rings[i] = new StripedRollingCounter(resolution.getLongest(), resolution.getChunks(), stripes);
+		}
+	}
+
+	void mark() {
+		for (StripedRollingCounter ring : rings) {
+			ring.mark();
+		}
+	}
+
+	long getCount(Duration window) {
+		return rings[windows.resolutionOf(window)].getCount(window);
+	}
+}
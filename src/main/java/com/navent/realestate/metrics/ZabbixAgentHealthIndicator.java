@@ -0,0 +1,31 @@
+package com.navent.realestate.metrics;
+
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+
+/**
+ * Estado del agente de zabbix en {@code /health}. Mientras el agente no arranca se informa UNKNOWN y no DOWN: que
+ * zabbix no responda no tiene que sacar al pod de servicio.
+ */
+public class ZabbixAgentHealthIndicator extends AbstractHealthIndicator {
+	private final ZabbixAgentStarter starter;
+
+	public ZabbixAgentHealthIndicator(ZabbixAgentStarter starter) {
+		this.starter = starter;
+	}
+
+	@Override
+	protected void doHealthCheck(Health.Builder builder) {
+		ZabbixAgentStarter.State state = starter.getState();
+		if (state == ZabbixAgentStarter.State.STARTED) {
+			builder.up();
+		} else {
+			builder.unknown();
+		}
+		builder.withDetail("state", state).withDetail("attempts", starter.getAttempts());
+		String lastError = starter.getLastError();
+		if (lastError != null) {
+			builder.withDetail("lastError", lastError);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package com.navent.realestate.metrics;
+
+import java.net.InetAddress;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.quigley.zabbixj.agent.ZabbixAgent;
+
+/**
+ * Arranca el {@link ZabbixAgent} en un thread propio, asi el arranque de la aplicacion no depende de que respondan
+ * el DNS o zabbix: resolver el host local y el del server y arrancar el agente se reintenta con backoff exponencial
+ * hasta que funciona o se llama a {@link #stop()}. El estado queda en {@link ZabbixAgentHealthIndicator}.
+ */
+public class ZabbixAgentStarter {
+	private static final Log logger = LogFactory.getLog(ZabbixAgentStarter.class);
+
+	public enum State {
+		STARTING, RETRYING, STARTED, STOPPED
+	}
+
+	private final ZabbixAgent agent;
+	private final String serverHost;
+	private final long initialBackoffMillis;
+	private final long maxBackoffMillis;
+
+	private volatile State state = State.STARTING;
+	private volatile int attempts;
+	private volatile String lastError;
+	private Thread thread;
+
+	/**
+	 * @param agent configurado salvo el host local y la direccion del server, que resuelve el starter
+	 */
+	public ZabbixAgentStarter(ZabbixAgent agent, String serverHost, long initialBackoffMillis,
+			long maxBackoffMillis) {
+		this.agent = agent;
+		this.serverHost = serverHost;
+		this.initialBackoffMillis = Math.max(1, initialBackoffMillis);
+		this.maxBackoffMillis = Math.max(this.initialBackoffMillis, maxBackoffMillis);
+	}
+
+	public synchronized void start() {
+		if (thread != null) {
+			return;
+		}
+		thread = new Thread(this::run, "navent-zabbix-agent-starter");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public synchronized void stop() throws Exception {
+		State previous = state;
+		state = State.STOPPED;
+		if (thread != null) {
+			thread.interrupt();
+		}
+		if (previous == State.STARTED) {
+			agent.stop();
+		}
+	}
+
+	private void run() {
+		long backoff = initialBackoffMillis;
+		while (state != State.STOPPED) {
+			attempts++;
+			try {
+				agent.setHostName(LocalHostName.get());
+				agent.setServerAddress(InetAddress.getByName(serverHost));
+				synchronized (this) {
+					if (state == State.STOPPED) {
+						return;
+					}
+					agent.start();
+					state = State.STARTED;
+				}
+				lastError = null;
+				logger.info("Zabbix agent started after " + attempts + " attempts, server " + serverHost);
+				return;
+			} catch (Exception e) {
+				lastError = e.toString();
+				synchronized (this) {
+					if (state == State.STOPPED) {
+						return;
+					}
+					state = State.RETRYING;
+				}
+				logger.warn("Zabbix agent could not start, retrying in " + backoff + " ms: " + e);
+			}
+			try {
+				Thread.sleep(backoff);
+			} catch (InterruptedException e) {
+				return;
+			}
+			backoff = Math.min(backoff * 2, maxBackoffMillis);
+		}
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * @return el error del ultimo intento fallido, o null si el agente arranco
+	 */
+	public String getLastError() {
+		return lastError;
+	}
+}
@@ -0,0 +1,16 @@
+package com.navent.realestate.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Valor de un item en el protocolo de trapper ({@code sender data}).
+ */
+@Data
+@AllArgsConstructor
+public class ZabbixItem {
+	private String host;
+	private String key;
+	private String value;
+	private long clock;
+}
@@ -1,5 +1,5 @@
 package com.navent.realestate.metrics;
 
 public enum ZabbixRegisteredMetricType {
-	counter;
+	counter, gauge, timer, summary;
 }
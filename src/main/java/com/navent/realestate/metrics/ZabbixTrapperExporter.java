@@ -0,0 +1,110 @@
+package com.navent.realestate.metrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Exporta las metricas a zabbix por trapper: en cada intervalo manda en un solo paquete los valores de la
+ * {@link MetricsSnapshot} que cambiaron desde el ultimo envio exitoso. Un envio es exitoso solo si el server
+ * proceso todos los items ({@code failed: 0}); si no, se reenvia el paquete completo en el siguiente intervalo.
+ * <p>
+ * La clave de cada item es {@code metrics["<nombre jerarquico>","<statistic>"]}, con el mismo nombre jerarquico
+ * que informa {@link CounterMetricsProvider} en el discovery, por ejemplo
+ * {@code metrics["httpServerRequests.uri.root.1MinRequestRate","count"]}.
+ */
+public class ZabbixTrapperExporter implements MetricsSink {
+	private static final Log logger = LogFactory.getLog(ZabbixTrapperExporter.class);
+
+	private final ZabbixTrapperSender sender;
+	private final Supplier<String> hostName;
+	private final int interval;
+
+	// solo se accede desde el thread del scheduler
+	private final Map<String, String> lastSent = new HashMap<>();
+
+	public ZabbixTrapperExporter(ZabbixTrapperSender sender, String hostName, int interval) {
+		this(sender, () -> hostName, interval);
+	}
+
+	/**
+	 * @param hostName se consulta en cada envio, desde el thread del scheduler; si falla el envio cuenta como error
+	 *            y se reintenta en el siguiente intervalo
+	 */
+	public ZabbixTrapperExporter(ZabbixTrapperSender sender, Supplier<String> hostName, int interval) {
+		this.sender = sender;
+		this.hostName = hostName;
+		this.interval = interval;
+	}
+
+	@Override
+	public String getName() {
+		return "zabbix";
+	}
+
+	@Override
+	public int getInterval() {
+		return interval;
+	}
+
+	@Override
+	public void export(MetricsSnapshot snapshot) throws Exception {
+		long clock = TimeUnit.MILLISECONDS.toSeconds(snapshot.getTimestamp());
+		List<ZabbixItem> changed = collectChanged(snapshot, hostName.get(), clock);
+		if (changed.isEmpty()) {
+			return;
+		}
+		ZabbixTrapperResponse response = sender.send(changed, clock);
+		if (!response.isSuccess()) {
+			logger.warn("Zabbix " + sender + " rejected metrics: " + response.getInfo());
+			return;
+		}
+		if (!response.isFullyProcessed()) {
+			// no se sabe cuales fallaron: no se guarda ninguno y se reenvia todo el paquete en el siguiente intervalo
+			logger.warn("Zabbix " + sender + " failed to process some of " + changed.size() + " metrics, resending: "
+					+ response.getInfo());
+			return;
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Sent " + changed.size() + " metrics to zabbix " + sender + ": " + response.getInfo());
+		}
+		changed.forEach(item -> lastSent.put(item.getKey(), item.getValue()));
+	}
+
+	List<ZabbixItem> collectChanged(MetricsSnapshot snapshot, String host, long clock) {
+		List<ZabbixItem> changed = new ArrayList<>();
+		for (MetricsSnapshot.Entry entry : snapshot.getEntries()) {
+			double value = entry.getValue();
+			if (Double.isNaN(value) || Double.isInfinite(value)) {
+				continue;
+			}
+			String key = itemKey(entry.getHierarchicalName(), entry.getStatistic());
+			String formatted = format(value);
+			if (!formatted.equals(lastSent.get(key))) {
+				changed.add(new ZabbixItem(host, key, formatted, clock));
+			}
+		}
+		return changed;
+	}
+
+	static String itemKey(String name, String statistic) {
+		return "metrics[" + quote(name) + "," + quote(statistic) + "]";
+	}
+
+	private static String quote(String param) {
+		return "\"" + param.replace("\"", "\\\"") + "\"";
+	}
+
+	private static String format(double value) {
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			return Long.toString((long) value);
+		}
+		return Double.toString(value);
+	}
+}
@@ -0,0 +1,56 @@
+package com.navent.realestate.metrics;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Respuesta del server a un envio por trapper. {@code info} trae el detalle de items procesados y fallidos, por
+ * ejemplo {@code processed: 10; failed: 2; total: 12; seconds spent: 0.000102}.
+ */
+@Data
+@AllArgsConstructor
+public class ZabbixTrapperResponse {
+	private static final Pattern PROCESSED = Pattern.compile("processed:\\s*(\\d+)");
+	private static final Pattern FAILED = Pattern.compile("failed:\\s*(\\d+)");
+
+	private String response;
+	private String info;
+
+	public boolean isSuccess() {
+		return "success".equals(response);
+	}
+
+	/**
+	 * @return items que el server acepto, o -1 si {@code info} no lo informa
+	 */
+	public int getProcessed() {
+		return parse(PROCESSED);
+	}
+
+	/**
+	 * @return items que el server rechazo (clave inexistente, tipo de item incorrecto, valor invalido), o -1 si
+	 *         {@code info} no lo informa
+	 */
+	public int getFailed() {
+		return parse(FAILED);
+	}
+
+	/**
+	 * El server acepto el paquete y proceso todos los items. Zabbix no dice cuales fallaron, asi que si alguno
+	 * fallo no se puede dar por entregado ninguno.
+	 */
+	public boolean isFullyProcessed() {
+		return isSuccess() && getFailed() == 0;
+	}
+
+	private int parse(Pattern pattern) {
+		if (info == null) {
+			return -1;
+		}
+		Matcher matcher = pattern.matcher(info);
+		return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+	}
+}
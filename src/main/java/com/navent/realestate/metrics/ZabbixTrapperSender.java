@@ -0,0 +1,83 @@
+package com.navent.realestate.metrics;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Cliente del protocolo de trapper de zabbix: manda todos los items en un unico paquete {@code sender data}
+ * ({@code ZBXD\1} + largo de 8 bytes little endian + JSON) y lee la respuesta del server.
+ */
+public class ZabbixTrapperSender {
+	private static final byte[] PROTOCOL_HEADER = { 'Z', 'B', 'X', 'D', 1 };
+	private static final int HEADER_LENGTH = PROTOCOL_HEADER.length + Long.BYTES;
+	private static final int MAX_RESPONSE_LENGTH = 1024 * 1024;
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final String serverHost;
+	private final int serverPort;
+	private final int connectTimeout;
+	private final int readTimeout;
+
+	public ZabbixTrapperSender(String serverHost, int serverPort, int connectTimeout, int readTimeout) {
+		this.serverHost = serverHost;
+		this.serverPort = serverPort;
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+	}
+
+	public ZabbixTrapperResponse send(List<ZabbixItem> items, long clock) throws IOException {
+		Map<String, Object> request = new LinkedHashMap<>();
+		request.put("request", "sender data");
+		request.put("data", items);
+		request.put("clock", clock);
+		byte[] payload = mapper.writeValueAsBytes(request);
+
+		try (Socket socket = new Socket()) {
+			socket.connect(new InetSocketAddress(serverHost, serverPort), connectTimeout);
+			socket.setSoTimeout(readTimeout);
+
+			OutputStream out = socket.getOutputStream();
+			out.write(ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN)
+					.put(PROTOCOL_HEADER)
+					.putLong(payload.length)
+					.array());
+			out.write(payload);
+			out.flush();
+
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			byte[] header = new byte[HEADER_LENGTH];
+			in.readFully(header);
+			for (int i = 0; i < 4; i++) {
+				if (header[i] != PROTOCOL_HEADER[i]) {
+					throw new IOException("Invalid zabbix response header");
+				}
+			}
+			long length = ByteBuffer.wrap(header, PROTOCOL_HEADER.length, Long.BYTES).order(ByteOrder.LITTLE_ENDIAN)
+					.getLong();
+			if (length < 0 || length > MAX_RESPONSE_LENGTH) {
+				throw new IOException("Invalid zabbix response length " + length);
+			}
+			byte[] body = new byte[(int) length];
+			in.readFully(body);
+
+			JsonNode response = mapper.readTree(body);
+			return new ZabbixTrapperResponse(response.path("response").asText(), response.path("info").asText());
+		}
+	}
+
+	@Override
+	public String toString() {
+		return serverHost + ":" + serverPort;
+	}
+}
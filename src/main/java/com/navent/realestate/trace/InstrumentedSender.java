@@ -0,0 +1,154 @@
+package com.navent.realestate.trace;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import zipkin2.Call;
+import zipkin2.Callback;
+import zipkin2.CheckResult;
+import zipkin2.codec.Encoding;
+import zipkin2.reporter.Sender;
+
+/**
+ * {@link Sender} que mide la latencia de cada envio al collector ({@code zipkin.reporter.send}, con tag
+ * {@code result}) y, si hay un {@link SpanSpool}, guarda en disco los mensajes que fallan y los reenvia despues
+ * del siguiente envio exitoso. Los archivos del spool que no se pueden leer se borran y se cuentan en
+ * {@code zipkin.reporter.spool.discarded} para que no traben la cola.
+ */
+public class InstrumentedSender extends Sender {
+	private static final Log logger = LogFactory.getLog(InstrumentedSender.class);
+	private static final int MAX_DRAINED_MESSAGES = 8;
+
+	private final Sender delegate;
+	private final SpanSpool spool;
+	private final TraceReporterMetrics metrics;
+	private final Timer sendSuccess;
+	private final Timer sendFailure;
+
+	/**
+	 * @param spool null para no guardar los mensajes que fallan
+	 */
+	public InstrumentedSender(Sender delegate, SpanSpool spool, TraceReporterMetrics metrics,
+			MeterRegistry registry) {
+		this.delegate = delegate;
+		this.spool = spool;
+		this.metrics = metrics;
+		this.sendSuccess = Timer.builder("zipkin.reporter.send").tag("result", "success")
+				.description("Latency of sending a message to the collector").register(registry);
+		this.sendFailure = Timer.builder("zipkin.reporter.send").tag("result", "failure")
+				.description("Latency of sending a message to the collector").register(registry);
+	}
+
+	@Override
+	public Encoding encoding() {
+		return delegate.encoding();
+	}
+
+	@Override
+	public int messageMaxBytes() {
+		return delegate.messageMaxBytes();
+	}
+
+	@Override
+	public int messageSizeInBytes(List<byte[]> encodedSpans) {
+		return delegate.messageSizeInBytes(encodedSpans);
+	}
+
+	@Override
+	public Call<Void> sendSpans(List<byte[]> encodedSpans) {
+		return new InstrumentedCall(delegate.sendSpans(encodedSpans), encodedSpans);
+	}
+
+	@Override
+	public CheckResult check() {
+		return delegate.check();
+	}
+
+	@Override
+	public void close() throws IOException {
+		delegate.close();
+	}
+
+	@Override
+	public String toString() {
+		return "Instrumented(" + delegate + ")";
+	}
+
+	private void drainSpool() {
+		try {
+			for (Path file : spool.pending(MAX_DRAINED_MESSAGES)) {
+				List<byte[]> spans;
+				try {
+					spans = spool.read(file);
+				} catch (IOException e) {
+					// si se quedara en el spool fallaria en cada reenvio y bloquearia a los que vienen detras
+					logger.warn("Discarding unreadable spooled message " + file, e);
+					spool.delete(file);
+					metrics.incrementSpoolDiscarded();
+					continue;
+				}
+				delegate.sendSpans(spans).execute();
+				spool.delete(file);
+			}
+		} catch (IOException | RuntimeException e) {
+			logger.debug("Unable to resend spooled spans, will retry after the next successful message", e);
+		}
+	}
+
+	private final class InstrumentedCall extends Call<Void> {
+		private final Call<Void> call;
+		private final List<byte[]> encodedSpans;
+
+		InstrumentedCall(Call<Void> call, List<byte[]> encodedSpans) {
+			this.call = call;
+			this.encodedSpans = encodedSpans;
+		}
+
+		@Override
+		public Void execute() throws IOException {
+			long start = System.nanoTime();
+			try {
+				call.execute();
+			} catch (IOException | RuntimeException e) {
+				sendFailure.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+				if (spool != null && spool.write(encodedSpans)) {
+					// queda en disco para reenviarlo, no cuenta como mensaje perdido
+					return null;
+				}
+				throw e;
+			}
+			sendSuccess.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			if (spool != null) {
+				drainSpool();
+			}
+			return null;
+		}
+
+		@Override
+		public void enqueue(Callback<Void> callback) {
+			call.enqueue(callback);
+		}
+
+		@Override
+		public void cancel() {
+			call.cancel();
+		}
+
+		@Override
+		public boolean isCanceled() {
+			return call.isCanceled();
+		}
+
+		@Override
+		public Call<Void> clone() {
+			return new InstrumentedCall(call.clone(), encodedSpans);
+		}
+	}
+}
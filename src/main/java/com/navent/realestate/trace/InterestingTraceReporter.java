@@ -0,0 +1,272 @@
+package com.navent.realestate.trace;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+
+import com.navent.realestate.metrics.NaventMetricsProperties.Apdex;
+import com.navent.realestate.metrics.NaventMetricsProperties.Sampling;
+
+import brave.sampler.Sampler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import zipkin2.Span;
+import zipkin2.reporter.Reporter;
+
+/**
+ * Decide que trazas se envian cuando termina el span raiz local (el de kind SERVER o el que no tiene padre):
+ * las que tienen error, status 5xx o duran mas que el umbral de tolerating de apdex del endpoint se envian siempre;
+ * el resto segun la probabilidad del endpoint o el {@link Sampler} base. Los spans hijos quedan en memoria hasta
+ * esa decision, y la decision se recuerda para enviar o descartar en el momento los hijos que terminan despues del
+ * raiz (por ejemplo los de tareas async). Se recuerdan hasta pendingMaxTraces trazas, pendientes o ya decididas;
+ * las mas viejas se olvidan y, si seguian pendientes, sus spans se descartan. Cada traza pendiente guarda hasta
+ * pendingMaxSpans hijos; los que sobran se descartan y se cuentan en {@code zipkin.sampler.spans.dropped}.
+ * <p>
+ * Cada traza se actualiza con {@link ConcurrentHashMap#compute}, asi los spans de trazas distintas no compiten
+ * por un lock comun.
+ */
+public class InterestingTraceReporter implements Reporter<Span> {
+	private static final String ERROR_TAG = "error";
+	private static final String STATUS_TAG = "http.status_code";
+	private static final String PATH_TAG = "http.path";
+	private static final String URL_TAG = "http.url";
+
+	private final Reporter<Span> delegate;
+	private final Sampler baseSampler;
+	private final Map<String, Sampler> endpointSamplers = new LinkedHashMap<>();
+	private final Apdex apdex;
+	private final PathMatcher pathMatcher = new AntPathMatcher();
+	private final int maxTraces;
+	private final int maxSpans;
+	private final Map<String, TraceState> traces = new ConcurrentHashMap<>();
+	// una entrada por traza de traces, en orden de llegada
+	private final Queue<String> order = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger size = new AtomicInteger();
+
+	private final Counter keptInteresting;
+	private final Counter keptSampled;
+	private final Counter dropped;
+	private final Counter evicted;
+	private final Counter spansDropped;
+
+	/**
+	 * @param apdex null o deshabilitado para no usar la latencia como criterio
+	 */
+	public InterestingTraceReporter(Reporter<Span> delegate, Sampler baseSampler, Sampling sampling, Apdex apdex,
+			MeterRegistry registry) {
+		this.delegate = delegate;
+		this.baseSampler = baseSampler;
+		this.apdex = apdex != null && apdex.isEnabled() ? apdex : null;
+		sampling.getEndpoints().forEach((pattern, probability) -> endpointSamplers.put(pattern,
+				Sampler.create(probability)));
+		this.maxTraces = sampling.getPendingMaxTraces();
+		this.maxSpans = sampling.getPendingMaxSpans();
+
+		keptInteresting = decision(registry, "interesting");
+		keptSampled = decision(registry, "sampled");
+		dropped = decision(registry, "dropped");
+		evicted = decision(registry, "evicted");
+		spansDropped = Counter.builder("zipkin.sampler.spans.dropped")
+				.description("Child spans dropped because their pending trace reached the maximum").register(registry);
+	}
+
+	private static Counter decision(MeterRegistry registry, String decision) {
+		return Counter.builder("zipkin.sampler.traces").tag("decision", decision)
+				.description("Traces by sampling decision").register(registry);
+	}
+
+	@Override
+	public void report(Span span) {
+		if (isLocalRoot(span)) {
+			reportRoot(span);
+		} else {
+			reportChild(span);
+		}
+	}
+
+	private void reportChild(Span span) {
+		Outcome outcome = new Outcome();
+		traces.compute(span.traceId(), (traceId, trace) -> {
+			if (trace == null) {
+				trace = created(traceId, outcome);
+			}
+			if (trace.spans != null) {
+				if (trace.spans.size() < maxSpans) {
+					trace.spans.add(span);
+				} else {
+					outcome.overflow = true;
+				}
+			} else {
+				outcome.kept = trace.kept;
+				outcome.late = true;
+			}
+			return trace;
+		});
+		if (outcome.created) {
+			evictOverflow();
+		}
+		if (outcome.overflow) {
+			spansDropped.increment();
+		}
+		if (outcome.late && outcome.kept) {
+			delegate.report(span);
+		}
+	}
+
+	private void reportRoot(Span span) {
+		Outcome outcome = new Outcome();
+		traces.compute(span.traceId(), (traceId, trace) -> {
+			if (trace == null) {
+				trace = created(traceId, outcome);
+			}
+			// una traza puede tener mas de un raiz local, cada uno decide con los hijos que llegaron desde el anterior
+			outcome.children = trace.spans == null ? Collections.<Span>emptyList() : trace.spans;
+			outcome.interesting = isInteresting(span, outcome.children);
+			outcome.kept = outcome.interesting || isSampled(span);
+			trace.spans = null;
+			trace.kept = outcome.kept;
+			return trace;
+		});
+		if (outcome.created) {
+			evictOverflow();
+		}
+
+		if (outcome.interesting) {
+			keptInteresting.increment();
+		} else if (outcome.kept) {
+			keptSampled.increment();
+		} else {
+			dropped.increment();
+			return;
+		}
+		for (Span child : outcome.children) {
+			delegate.report(child);
+		}
+		delegate.report(span);
+	}
+
+	private TraceState created(String traceId, Outcome outcome) {
+		outcome.created = true;
+		order.add(traceId);
+		return new TraceState();
+	}
+
+	/**
+	 * Olvida las trazas mas viejas pasado el maximo. Las entradas solo se sacan de {@link #traces} aca, asi cada una
+	 * tiene exactamente un id en {@link #order}.
+	 */
+	private void evictOverflow() {
+		if (size.incrementAndGet() <= maxTraces) {
+			return;
+		}
+		String traceId = order.poll();
+		if (traceId == null) {
+			size.decrementAndGet();
+			return;
+		}
+		TraceState trace = traces.remove(traceId);
+		size.decrementAndGet();
+		if (trace != null && trace.spans != null) {
+			evicted.increment();
+		}
+	}
+
+	private boolean isInteresting(Span root, List<Span> children) {
+		if (hasError(root)) {
+			return true;
+		}
+		for (Span child : children) {
+			if (hasError(child)) {
+				return true;
+			}
+		}
+		if (apdex == null || root.duration() == null) {
+			return false;
+		}
+		String pattern = matchingPattern(path(root), apdex.getEndpoints().keySet());
+		long toleratingMicros = TimeUnit.MILLISECONDS.toMicros(apdex.toleratingMillis(pattern));
+		return root.duration() > toleratingMicros;
+	}
+
+	private boolean isSampled(Span root) {
+		String pattern = matchingPattern(path(root), endpointSamplers.keySet());
+		Sampler sampler = pattern == null ? baseSampler : endpointSamplers.get(pattern);
+		return sampler.isSampled(traceIdLow(root.traceId()));
+	}
+
+	private String matchingPattern(String path, Iterable<String> patterns) {
+		if (path == null) {
+			return null;
+		}
+		for (String pattern : patterns) {
+			if (pathMatcher.match(pattern, path)) {
+				return pattern;
+			}
+		}
+		return null;
+	}
+
+	private static boolean isLocalRoot(Span span) {
+		return span.parentId() == null || span.kind() == Span.Kind.SERVER;
+	}
+
+	private static boolean hasError(Span span) {
+		if (span.tags().containsKey(ERROR_TAG)) {
+			return true;
+		}
+		String status = span.tags().get(STATUS_TAG);
+		return status != null && status.length() == 3 && status.charAt(0) == '5';
+	}
+
+	private static String path(Span span) {
+		String path = span.tags().get(PATH_TAG);
+		if (path != null) {
+			return path;
+		}
+		String url = span.tags().get(URL_TAG);
+		if (url == null) {
+			return null;
+		}
+		try {
+			return URI.create(url).getPath();
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Spans de una traza mientras no hay decision (spans no null) y, despues, la decision tomada.
+	 */
+	private static final class TraceState {
+		private List<Span> spans = new ArrayList<>();
+		private boolean kept;
+	}
+
+	/**
+	 * Resultado de un {@link ConcurrentHashMap#compute} para actuar fuera del lock de la entrada.
+	 */
+	private static final class Outcome {
+		private boolean created;
+		private boolean late;
+		private boolean overflow;
+		private boolean kept;
+		private boolean interesting;
+		private List<Span> children;
+	}
+
+	private static long traceIdLow(String traceId) {
+		String low = traceId.length() > 16 ? traceId.substring(traceId.length() - 16) : traceId;
+		return Long.parseUnsignedLong(low, 16);
+	}
+}
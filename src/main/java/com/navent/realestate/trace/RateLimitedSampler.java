@@ -0,0 +1,49 @@
+package com.navent.realestate.trace;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import brave.sampler.Sampler;
+
+/**
+ * Muestrea hasta una cantidad de trazas por segundo, sin importar el trafico. El segundo actual y la cantidad
+ * muestreada en el se guardan juntos en un solo long para decidir con un CAS.
+ */
+public class RateLimitedSampler extends Sampler {
+	private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	private final int tracesPerSecond;
+	private final long startNanos = System.nanoTime();
+	// segundo en los 32 bits altos, trazas muestreadas en los bajos
+	private final AtomicLong state = new AtomicLong();
+
+	public RateLimitedSampler(int tracesPerSecond) {
+		if (tracesPerSecond < 0) {
+			throw new IllegalArgumentException("tracesPerSecond must not be negative");
+		}
+		this.tracesPerSecond = tracesPerSecond;
+	}
+
+	@Override
+	public boolean isSampled(long traceId) {
+		if (tracesPerSecond == 0) {
+			return false;
+		}
+		long second = (System.nanoTime() - startNanos) / NANOS_PER_SECOND;
+		for (;;) {
+			long current = state.get();
+			long count = current >>> 32 == second ? current & 0xFFFFFFFFL : 0;
+			if (count >= tracesPerSecond) {
+				return false;
+			}
+			if (state.compareAndSet(current, second << 32 | (count + 1))) {
+				return true;
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "RateLimitedSampler(" + tracesPerSecond + "/s)";
+	}
+}
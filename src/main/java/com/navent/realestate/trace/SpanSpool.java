@@ -0,0 +1,130 @@
+package com.navent.realestate.trace;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Guarda en disco los mensajes de spans que no se pudieron enviar al collector, un archivo por mensaje, hasta un
+ * maximo de bytes. Los archivos se nombran por orden de llegada y sobreviven un reinicio de la aplicacion.
+ */
+public class SpanSpool {
+	private static final String SUFFIX = ".spool";
+
+	private final Path directory;
+	private final long maxBytes;
+	private final AtomicLong sequence = new AtomicLong();
+	private final AtomicLong spooledBytes = new AtomicLong();
+	private final Counter spooledSpans;
+	private final Counter droppedSpans;
+
+	public SpanSpool(Path directory, long maxBytes, MeterRegistry registry) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		this.maxBytes = maxBytes;
+		for (Path file : pending(Integer.MAX_VALUE)) {
+			spooledBytes.addAndGet(Files.size(file));
+		}
+		spooledSpans = Counter.builder("zipkin.reporter.spool.spans")
+				.description("Spans written to the local spool while the collector was unavailable").register(registry);
+		droppedSpans = Counter.builder("zipkin.reporter.spool.dropped")
+				.description("Spans dropped because the local spool was full").register(registry);
+		Gauge.builder("zipkin.reporter.spool.bytes", spooledBytes, AtomicLong::get)
+				.baseUnit("bytes").description("Bytes waiting in the local spool").register(registry);
+	}
+
+	/**
+	 * @return true si el mensaje quedo guardado, false si el spool esta lleno o no se pudo escribir
+	 */
+	synchronized boolean write(List<byte[]> encodedSpans) {
+		long size = Integer.BYTES;
+		for (byte[] span : encodedSpans) {
+			size += Integer.BYTES + span.length;
+		}
+		if (spooledBytes.get() + size > maxBytes) {
+			droppedSpans.increment(encodedSpans.size());
+			return false;
+		}
+		String name = String.format("%020d-%010d", System.currentTimeMillis(), sequence.incrementAndGet());
+		Path temp = directory.resolve(name + ".tmp");
+		try {
+			try (OutputStream file = Files.newOutputStream(temp);
+					DataOutputStream out = new DataOutputStream(file)) {
+				out.writeInt(encodedSpans.size());
+				for (byte[] span : encodedSpans) {
+					out.writeInt(span.length);
+					out.write(span);
+				}
+			}
+			Files.move(temp, directory.resolve(name + SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			droppedSpans.increment(encodedSpans.size());
+			return false;
+		}
+		spooledBytes.addAndGet(size);
+		spooledSpans.increment(encodedSpans.size());
+		return true;
+	}
+
+	/**
+	 * @return los mensajes guardados mas viejos, hasta max
+	 */
+	synchronized List<Path> pending(int max) throws IOException {
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			stream.forEach(files::add);
+		}
+		Collections.sort(files);
+		return files.size() > max ? files.subList(0, max) : files;
+	}
+
+	/**
+	 * Valida la cantidad y el largo de cada span contra el tamano del archivo antes de alocar, asi un archivo
+	 * truncado o corrupto falla con {@link IOException} en lugar de pedir un array arbitrario.
+	 */
+	List<byte[]> read(Path file) throws IOException {
+		try (InputStream stream = Files.newInputStream(file); DataInputStream in = new DataInputStream(stream)) {
+			long remaining = Files.size(file) - Integer.BYTES;
+			int count = in.readInt();
+			if (count < 0 || (long) count * Integer.BYTES > remaining) {
+				throw new IOException("Corrupt spool file " + file + ": " + count + " spans in " + remaining + " bytes");
+			}
+			List<byte[]> spans = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				int length = in.readInt();
+				remaining -= Integer.BYTES;
+				if (length < 0 || length > remaining) {
+					throw new IOException("Corrupt spool file " + file + ": span of " + length + " bytes in "
+							+ remaining + " bytes");
+				}
+				byte[] span = new byte[length];
+				in.readFully(span);
+				remaining -= length;
+				spans.add(span);
+			}
+			if (remaining != 0) {
+				throw new IOException("Corrupt spool file " + file + ": " + remaining + " trailing bytes");
+			}
+			return spans;
+		}
+	}
+
+	synchronized void delete(Path file) throws IOException {
+		long size = Files.size(file);
+		Files.delete(file);
+		spooledBytes.addAndGet(-size);
+	}
+}
@@ -1,18 +1,27 @@
 package com.navent.realestate.trace;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
 
 import com.navent.realestate.metrics.NaventMetricsProperties;
+import com.navent.realestate.metrics.NaventMetricsProperties.Sampling;
 
 import brave.Tracing;
 import brave.opentracing.BraveTracer;
-import io.opentracing.Tracer;
+import brave.sampler.Sampler;
+import io.micrometer.core.instrument.MeterRegistry;
 import zipkin2.Span;
+import zipkin2.codec.Encoding;
 import zipkin2.reporter.AsyncReporter;
+import zipkin2.reporter.Reporter;
 import zipkin2.reporter.Sender;
 import zipkin2.reporter.urlconnection.URLConnectionSender;
 
@@ -21,16 +30,72 @@ import zipkin2.reporter.urlconnection.URLConnectionSender;
 @ConditionalOnProperty(name = "metrics.trace.enabled", havingValue = "true", matchIfMissing = false)
 public class TraceConfig {
 
+	@Bean(destroyMethod = "close")
+	public AsyncReporter<Span> spanReporter(NaventMetricsProperties metricsProperties, MeterRegistry registry)
+			throws IOException {
+		NaventMetricsProperties.Trace trace = metricsProperties.getTrace();
+		Assert.notNull(trace.getSenderEndpoint(), "Metrics Trace sender endpoint is mandatory");
+		NaventMetricsProperties.Reporter config = trace.getReporter();
+
+		Sender sender = URLConnectionSender.newBuilder()
+				.endpoint(trace.getSenderEndpoint())
+				.encoding(Encoding.valueOf(config.getEncoding()))
+				.messageMaxBytes(config.getMessageMaxBytes())
+				.compressionEnabled(config.isCompression())
+				.connectTimeout(config.getConnectTimeout())
+				.readTimeout(config.getReadTimeout())
+				.build();
+		SpanSpool spool = StringUtils.hasText(config.getSpoolDirectory())
+				? new SpanSpool(Paths.get(config.getSpoolDirectory()), config.getSpoolMaxBytes(), registry)
+				: null;
+
+		TraceReporterMetrics metrics = new TraceReporterMetrics(registry);
+		return AsyncReporter.builder(new InstrumentedSender(sender, spool, metrics, registry))
+				.queuedMaxSpans(config.getQueuedMaxSpans())
+				.queuedMaxBytes(config.getQueuedMaxBytes())
+				.messageMaxBytes(config.getMessageMaxBytes())
+				.messageTimeout(config.getMessageTimeout(), TimeUnit.MILLISECONDS)
+				.metrics(metrics)
+				.build();
+	}
+
 	@Bean
-	public io.opentracing.Tracer tracer(NaventMetricsProperties metricsProperties) {
-		Assert.notNull(metricsProperties.getTrace().getSenderEndpoint(), "Metrics Trace sender endpoint is mandatory");
+	public io.opentracing.Tracer tracer(NaventMetricsProperties metricsProperties, AsyncReporter<Span> spanReporter,
+			MeterRegistry registry) {
 		Assert.notNull(metricsProperties.getTrace().getServiceName(), "Metrics Trace service name is mandatory");
+		return BraveTracer.create(tracing(metricsProperties, spanReporter, registry));
+	}
+
+	/**
+	 * Con keepInteresting o endpoints se graban todas las trazas y la decision se toma al terminar el span raiz.
+	 * Brave propaga que la traza esta grabada, asi que los servicios llamados reciben siempre
+	 * {@code X-B3-Sampled: 1}: la tasa base solo limita lo que envia esta aplicacion.
+	 */
+	static Tracing tracing(NaventMetricsProperties metricsProperties, Reporter<Span> spanReporter,
+			MeterRegistry registry) {
+		Sampling sampling = metricsProperties.getTrace().getSampling();
+
+		Sampler baseSampler = baseSampler(sampling);
+		Sampler sampler = baseSampler;
+		Reporter<Span> reporter = spanReporter;
+		if (sampling.isKeepInteresting() || !sampling.getEndpoints().isEmpty()) {
+			sampler = Sampler.ALWAYS_SAMPLE;
+			reporter = new InterestingTraceReporter(spanReporter, baseSampler, sampling,
+					sampling.isKeepInteresting() ? metricsProperties.getApdex() : null, registry);
+		}
+
+		return Tracing.newBuilder().localServiceName(metricsProperties.getTrace().getServiceName())
+				.sampler(sampler).spanReporter(reporter).build();
+	}
 
-		Sender sender = URLConnectionSender.create(metricsProperties.getTrace().getSenderEndpoint());
-	    AsyncReporter<Span> reporter = AsyncReporter.builder(sender).build();
-	    Tracing braveTracer = Tracing.newBuilder().localServiceName(metricsProperties.getTrace().getServiceName())
-	    		.spanReporter(reporter).build();
-	    Tracer tracer = BraveTracer.create(braveTracer);
-	    return tracer;
+	private static Sampler baseSampler(Sampling sampling) {
+		switch (sampling.getMode()) {
+		case PROBABILITY:
+			return Sampler.create(sampling.getProbability());
+		case RATE_LIMITED:
+			return new RateLimitedSampler(sampling.getTracesPerSecond());
+		default:
+			return Sampler.ALWAYS_SAMPLE;
+		}
 	}
 }
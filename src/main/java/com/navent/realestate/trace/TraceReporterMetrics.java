@@ -0,0 +1,91 @@
+package com.navent.realestate.trace;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import zipkin2.reporter.ReporterMetrics;
+
+/**
+ * Publica en micrometer lo que informa el {@link zipkin2.reporter.AsyncReporter}: spans y mensajes enviados y
+ * descartados, bytes y profundidad de la cola. Suma los mensajes del spool que se descartaron por estar truncados o
+ * corruptos.
+ */
+public class TraceReporterMetrics implements ReporterMetrics {
+	private final Counter messages;
+	private final Counter messagesDropped;
+	private final Counter messageBytes;
+	private final Counter spans;
+	private final Counter spansDropped;
+	private final Counter spanBytes;
+	private final Counter spoolDiscarded;
+	private final AtomicInteger queuedSpans = new AtomicInteger();
+	private final AtomicInteger queuedBytes = new AtomicInteger();
+
+	public TraceReporterMetrics(MeterRegistry registry) {
+		messages = Counter.builder("zipkin.reporter.messages")
+				.description("Messages sent to the collector").register(registry);
+		messagesDropped = Counter.builder("zipkin.reporter.messages.dropped")
+				.description("Messages that could not be sent").register(registry);
+		messageBytes = Counter.builder("zipkin.reporter.message.bytes")
+				.baseUnit("bytes").description("Bytes sent to the collector").register(registry);
+		spans = Counter.builder("zipkin.reporter.spans")
+				.description("Spans reported").register(registry);
+		spansDropped = Counter.builder("zipkin.reporter.spans.dropped")
+				.description("Spans dropped because the queue was full or the message failed").register(registry);
+		spanBytes = Counter.builder("zipkin.reporter.span.bytes")
+				.baseUnit("bytes").description("Bytes of reported spans").register(registry);
+		spoolDiscarded = Counter.builder("zipkin.reporter.spool.discarded")
+				.description("Spooled messages discarded because the file was truncated or unreadable")
+				.register(registry);
+		Gauge.builder("zipkin.reporter.queue.spans", queuedSpans, AtomicInteger::get)
+				.description("Spans waiting in the reporter queue").register(registry);
+		Gauge.builder("zipkin.reporter.queue.bytes", queuedBytes, AtomicInteger::get)
+				.baseUnit("bytes").description("Bytes waiting in the reporter queue").register(registry);
+	}
+
+	@Override
+	public void incrementMessages() {
+		messages.increment();
+	}
+
+	@Override
+	public void incrementMessagesDropped(Throwable cause) {
+		messagesDropped.increment();
+	}
+
+	@Override
+	public void incrementSpans(int quantity) {
+		spans.increment(quantity);
+	}
+
+	@Override
+	public void incrementSpanBytes(int quantity) {
+		spanBytes.increment(quantity);
+	}
+
+	@Override
+	public void incrementMessageBytes(int quantity) {
+		messageBytes.increment(quantity);
+	}
+
+	@Override
+	public void incrementSpansDropped(int quantity) {
+		spansDropped.increment(quantity);
+	}
+
+	public void incrementSpoolDiscarded() {
+		spoolDiscarded.increment();
+	}
+
+	@Override
+	public void updateQueuedSpans(int update) {
+		queuedSpans.set(update);
+	}
+
+	@Override
+	public void updateQueuedBytes(int update) {
+		queuedBytes.set(update);
+	}
+}
@@ -0,0 +1,80 @@
+package com.navent.realestate.metrics;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.navent.realestate.metrics.NaventMetricsProperties.Concurrency;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class AdaptiveConcurrencyLimitTest {
+	private static final long RTT = TimeUnit.MILLISECONDS.toNanos(20);
+	private static final int WINDOW = 100;
+
+	@Test
+	public void failingReleasesDriveTheLimitDown() {
+		AdaptiveConcurrencyLimit limit = limit();
+
+		int previous = limit.getLimit();
+		for (int window = 0; window < 30; window++) {
+			saturated(limit, WINDOW, i -> false);
+			Assert.assertTrue("window " + window + ": " + limit.getLimit(), limit.getLimit() < previous
+					|| limit.getLimit() == 10);
+			previous = limit.getLimit();
+		}
+
+		Assert.assertEquals(10, limit.getLimit());
+	}
+
+	@Test
+	public void errorsBelowTheThresholdDoNotShrinkTheLimit() {
+		AdaptiveConcurrencyLimit limit = limit();
+
+		// uno de cada cincuenta falla, menos que errorThreshold
+		saturated(limit, 30 * WINDOW, i -> i % 50 != 0);
+
+		Assert.assertTrue(String.valueOf(limit.getLimit()), limit.getLimit() > 100);
+	}
+
+	@Test
+	public void cancelledPermitsAreNotErrors() {
+		AdaptiveConcurrencyLimit limit = limit();
+
+		for (int i = 0; i < 30 * WINDOW; i++) {
+			Assert.assertTrue(limit.tryAcquire());
+			limit.cancel();
+		}
+
+		Assert.assertEquals(100, limit.getLimit());
+		Assert.assertEquals(0, limit.getInFlight());
+	}
+
+	private static AdaptiveConcurrencyLimit limit() {
+		Concurrency concurrency = new Concurrency();
+		concurrency.setInitialLimit(100);
+		concurrency.setMinLimit(10);
+		concurrency.setWindowSize(WINDOW);
+		return new AdaptiveConcurrencyLimit(new SimpleMeterRegistry(), "test", Collections.emptyList(), concurrency,
+				1000);
+	}
+
+	/**
+	 * Una app saturada: cada request que termina deja lugar a otro, asi los lugares tomados siguen en el limite.
+	 */
+	private static void saturated(AdaptiveConcurrencyLimit limit, int releases, IntPredicate ok) {
+		while (limit.tryAcquire()) {
+		}
+		for (int i = 0; i < releases; i++) {
+			limit.release(RTT, ok.test(i));
+			while (limit.tryAcquire()) {
+			}
+		}
+		while (limit.getInFlight() > 0) {
+			limit.cancel();
+		}
+	}
+}
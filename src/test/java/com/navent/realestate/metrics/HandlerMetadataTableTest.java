@@ -0,0 +1,98 @@
+package com.navent.realestate.metrics;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class HandlerMetadataTableTest {
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+	private AnnotationConfigApplicationContext context;
+	private HandlerMetadataTable table;
+
+	@Before
+	public void refreshTable() {
+		context = new AnnotationConfigApplicationContext(WebConfig.class);
+		table = new HandlerMetadataTable(registry, "http.server.requests", null);
+		table.refresh(context);
+	}
+
+	@After
+	public void closeContext() {
+		context.close();
+	}
+
+	@Test
+	public void singleMappingsAreTaggedWhenTheTableIsBuilt() throws Exception {
+		HandlerMetadata metadata = table.get(handler("get"), "GET", "/v1/ads/{id}");
+
+		Assert.assertEquals(Tags.of("method", "GET", "uri", "/v1/ads/{id}"), metadata.getTags());
+		Assert.assertNotNull(registry.get("ads.get").tags("method", "GET", "uri", "/v1/ads/{id}").longTaskTimer());
+	}
+
+	@Test
+	public void multiMappingsAreTaggedByTheMatchedPatternAndMethod() throws Exception {
+		HandlerMethod handler = handler("search");
+
+		HandlerMetadata post = table.get(handler, "POST", "/v2/ads");
+		HandlerMetadata get = table.get(handler, "GET", "/v1/ads");
+
+		Assert.assertEquals(Tags.of("method", "POST", "uri", "/v2/ads"), post.getTags());
+		Assert.assertEquals(Tags.of("method", "GET", "uri", "/v1/ads"), get.getTags());
+		Assert.assertSame(post, table.get(handler, "POST", "/v2/ads"));
+		Assert.assertNotNull(registry.get("ads.search").tags("method", "POST", "uri", "/v2/ads").longTaskTimer());
+		Assert.assertEquals(2, registry.find("ads.search").longTaskTimers().size());
+	}
+
+	@Test
+	public void multiMappingsWithoutAPatternAreMeasuredPerRequest() throws Exception {
+		HandlerMethod handler = handler("search");
+
+		Assert.assertNull(table.get(handler, "GET", null).getTags());
+		Assert.assertNull(table.get(handler, "BREW", "/v1/ads").getTags());
+		Assert.assertTrue(registry.find("ads.search").longTaskTimers().isEmpty());
+	}
+
+	private HandlerMethod handler(String name) throws Exception {
+		return new HandlerMethod(context.getBean(AdsController.class), AdsController.class.getMethod(name));
+	}
+
+	@Configuration
+	static class WebConfig {
+		@Bean
+		public RequestMappingHandlerMapping requestMappingHandlerMapping() {
+			return new RequestMappingHandlerMapping();
+		}
+
+		@Bean
+		public AdsController adsController() {
+			return new AdsController();
+		}
+	}
+
+	@Controller
+	public static class AdsController {
+		@Timed(value = "ads.get", longTask = true)
+		@RequestMapping(path = "/v1/ads/{id}", method = RequestMethod.GET)
+		public void get() {
+		}
+
+		@Timed(value = "ads.search", longTask = true)
+		@RequestMapping(path = { "/v1/ads", "/v2/ads" }, method = { RequestMethod.GET, RequestMethod.POST })
+		public void search() {
+		}
+	}
+}
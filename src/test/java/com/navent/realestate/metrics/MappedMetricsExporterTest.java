@@ -0,0 +1,127 @@
+package com.navent.realestate.metrics;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class MappedMetricsExporterTest {
+	private static final int WRITERS = 4;
+	private static final int TICKS = 2000;
+	private static final int ENTRIES = 50;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Cada tick escribe el mismo valor en todas las measurements y en el timestamp: una foto con valores distintos
+	 * mezclaria dos escrituras.
+	 */
+	@Test
+	public void readerNeverSeesATornSnapshot() throws Exception {
+		Path path = folder.newFile("metrics.mmap").toPath();
+		MappedMetricsExporter exporter = new MappedMetricsExporter(path, 64, 1);
+		MappedMetricsReader reader = MappedMetricsReader.open(path);
+
+		ExecutorService executor = Executors.newFixedThreadPool(WRITERS + 1);
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicBoolean writing = new AtomicBoolean(true);
+		try {
+			List<Future<?>> writers = new ArrayList<>();
+			for (int writer = 0; writer < WRITERS; writer++) {
+				long base = (writer + 1) * 1_000_000L;
+				writers.add(executor.submit(() -> {
+					start.await();
+					for (int tick = 1; tick <= TICKS; tick++) {
+						exporter.export(snapshot(base + tick));
+					}
+					return null;
+				}));
+			}
+			Future<Integer> checked = executor.submit(() -> {
+				start.await();
+				int snapshots = 0;
+				long lastSequence = -1;
+				while (writing.get()) {
+					MappedMetricsReader.Snapshot snapshot;
+					try {
+						snapshot = reader.read();
+					} catch (IllegalStateException e) {
+						// los writers no dejaron una ventana libre, no es una lectura rota
+						continue;
+					}
+					Assert.assertTrue(snapshot.getSequence() >= lastSequence);
+					lastSequence = snapshot.getSequence();
+					assertConsistent(snapshot);
+					snapshots++;
+				}
+				return snapshots;
+			});
+
+			start.countDown();
+			for (Future<?> writer : writers) {
+				writer.get(60, TimeUnit.SECONDS);
+			}
+			writing.set(false);
+			Assert.assertTrue(checked.get(60, TimeUnit.SECONDS) > 0);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void countsMeasurementsThatDoNotFitOnce() throws Exception {
+		MappedMetricsExporter exporter = new MappedMetricsExporter(folder.newFile("metrics.mmap").toPath(), 2, 1);
+		MeterRegistry registry = new SimpleMeterRegistry();
+		exporter.bindTo(registry);
+
+		String longName = new String(new char[MappedMetricsFile.MAX_NAME_BYTES]).replace('\0', 'a');
+		List<MetricsSnapshot.Entry> entries = new ArrayList<>();
+		entries.add(new MetricsSnapshot.Entry(null, longName, "value", 1));
+		entries.add(new MetricsSnapshot.Entry(null, "a", "value", 1));
+		entries.add(new MetricsSnapshot.Entry(null, "b", "value", 1));
+		entries.add(new MetricsSnapshot.Entry(null, "c", "value", 1));
+		exporter.export(new MetricsSnapshot(1, entries));
+		exporter.export(new MetricsSnapshot(2, entries));
+
+		Assert.assertEquals(2, registry.get("metrics.mapped.skipped").gauge().value(), 0);
+		Map<String, Double> values = MappedMetricsReader.open(folder.getRoot().toPath().resolve("metrics.mmap"))
+				.read().getValues();
+		Assert.assertEquals(2, values.size());
+		Assert.assertTrue(values.containsKey("a:value"));
+		Assert.assertTrue(values.containsKey("b:value"));
+	}
+
+	private static MetricsSnapshot snapshot(long value) {
+		List<MetricsSnapshot.Entry> entries = new ArrayList<>(ENTRIES);
+		for (int i = 0; i < ENTRIES; i++) {
+			entries.add(new MetricsSnapshot.Entry(null, "meter" + i, "value", value));
+		}
+		return new MetricsSnapshot(value, entries);
+	}
+
+	private static void assertConsistent(MappedMetricsReader.Snapshot snapshot) {
+		if (snapshot.getTimestamp() == 0) {
+			// todavia no escribio nadie
+			return;
+		}
+		Assert.assertEquals(ENTRIES, snapshot.getValues().size());
+		for (Map.Entry<String, Double> value : snapshot.getValues().entrySet()) {
+			Assert.assertEquals("torn snapshot at " + value.getKey(), snapshot.getTimestamp(), value.getValue(), 0);
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package com.navent.realestate.metrics;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RollingWindowsTest {
+
+	@Test
+	public void oneMinuteIsASingleRingOfTenChunks() {
+		RollingWindows windows = new RollingWindows(Collections.singletonList(Duration.ofMinutes(1)));
+
+		Assert.assertEquals(1, windows.getResolutions().size());
+		Assert.assertEquals(Duration.ofSeconds(6), windows.getResolutions().get(0).getChunk());
+		Assert.assertEquals(10, windows.getResolutions().get(0).getChunks());
+	}
+
+	@Test
+	public void usualWindowsShareOneRing() {
+		RollingWindows windows = new RollingWindows(
+				Arrays.asList(Duration.ofSeconds(10), Duration.ofSeconds(60), Duration.ofSeconds(300)));
+
+		Assert.assertEquals(1, windows.getResolutions().size());
+		Assert.assertEquals(Duration.ofSeconds(1), windows.getResolutions().get(0).getChunk());
+		Assert.assertEquals(300, windows.getResolutions().get(0).getChunks());
+	}
+
+	@Test
+	public void longWindowsMoveToACoarserRing() {
+		RollingWindows windows = new RollingWindows(Arrays.asList(Duration.ofSeconds(900), Duration.ofSeconds(10),
+				Duration.ofSeconds(60), Duration.ofSeconds(300)));
+
+		Assert.assertEquals(2, windows.getResolutions().size());
+		Assert.assertEquals(0, windows.resolutionOf(Duration.ofSeconds(300)));
+		Assert.assertEquals(1, windows.resolutionOf(Duration.ofSeconds(900)));
+		Assert.assertEquals(Duration.ofSeconds(90), windows.getResolutions().get(1).getChunk());
+		for (RollingWindows.Resolution resolution : windows.getResolutions()) {
+			Assert.assertTrue(resolution.getChunks() <= RollingWindows.MAX_CHUNKS);
+		}
+	}
+}
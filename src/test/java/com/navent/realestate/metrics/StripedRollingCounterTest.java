@@ -0,0 +1,118 @@
+package com.navent.realestate.metrics;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StripedRollingCounterTest {
+	private static final Duration WINDOW = Duration.ofSeconds(60);
+	private static final int CHUNKS = 10;
+	private static final long CHUNK_NANOS = WINDOW.toNanos() / CHUNKS;
+
+	private final Ticker ticker = new Ticker();
+
+	@Test
+	public void sumsTheWindowAcrossRotations() {
+		StripedRollingCounter counter = counter();
+
+		counter.mark(10);
+		ticker.at(3);
+		counter.mark(20);
+		ticker.at(9);
+		counter.mark(40);
+		Assert.assertEquals(70, counter.getCount());
+		Assert.assertEquals("the last two chunks", 40, counter.getCount(Duration.ofSeconds(12)));
+
+		// el chunk 10 reusa el lugar libre del ring y el 0 todavia pesa entero
+		ticker.at(10);
+		counter.mark(1);
+		Assert.assertEquals(71, counter.getCount());
+
+		// a mitad del chunk 10 el 0 pesa la mitad
+		ticker.at(10, CHUNK_NANOS / 2);
+		Assert.assertEquals(66, counter.getCount());
+
+		// el chunk 11 pisa el lugar del 0, que ya salio de la ventana
+		ticker.at(11);
+		counter.mark(2);
+		Assert.assertEquals(63, counter.getCount());
+	}
+
+	@Test
+	public void expiresAfterAFullWindow() {
+		StripedRollingCounter counter = counter();
+
+		counter.mark(5);
+		ticker.at(11);
+		Assert.assertEquals(0, counter.getCount());
+		ticker.at(3 * CHUNKS);
+		Assert.assertEquals(0, counter.getCount());
+		counter.mark(1);
+		Assert.assertEquals(1, counter.getCount());
+	}
+
+	@Test
+	public void staleMarkDoesNotOverwriteANewerChunk() {
+		for (int laps = 1; laps <= 4; laps++) {
+			StripedRollingCounter counter = counter();
+
+			// el chunk laps * 11 ocupa el mismo lugar del ring que el 0
+			ticker.at(laps * (CHUNKS + 1));
+			counter.mark(3);
+			// un thread que leyo el reloj en el chunk 0 y recien ahora llega al CAS
+			ticker.stalledAt(0);
+			counter.mark(100);
+
+			Assert.assertEquals(laps + " laps late", 3, counter.getCount());
+		}
+	}
+
+	@Test
+	public void olderCellsAreReplacedAcrossTheEpochWrap() {
+		StripedRollingCounter counter = counter();
+
+		long epoch = (1L << 24) - 3;
+		ticker.at(epoch);
+		counter.mark(7);
+		ticker.at(epoch + 5);
+		counter.mark(1);
+		Assert.assertEquals(8, counter.getCount());
+
+		ticker.at(epoch + CHUNKS + 1);
+		counter.mark(1);
+		Assert.assertEquals(2, counter.getCount());
+	}
+
+	private StripedRollingCounter counter() {
+		ticker.at(0);
+		return new StripedRollingCounter(WINDOW, CHUNKS, 1, ticker::next);
+	}
+
+	/**
+	 * Reloj manual en chunks. Un instante encolado con {@link #stalledAt(long)} lo devuelve la siguiente lectura,
+	 * como un thread que leyo el reloj antes de demorarse.
+	 */
+	private static final class Ticker {
+		private final Deque<Long> stalled = new ArrayDeque<>();
+		private long now;
+
+		void at(long chunks) {
+			at(chunks, 0);
+		}
+
+		void at(long chunks, long nanos) {
+			now = chunks * CHUNK_NANOS + nanos;
+		}
+
+		void stalledAt(long chunks) {
+			stalled.add(chunks * CHUNK_NANOS);
+		}
+
+		long next() {
+			return stalled.isEmpty() ? now : stalled.poll();
+		}
+	}
+}
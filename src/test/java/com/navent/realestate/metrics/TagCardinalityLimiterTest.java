@@ -0,0 +1,53 @@
+package com.navent.realestate.metrics;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.navent.realestate.metrics.NaventMetricsProperties.Cardinality;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class TagCardinalityLimiterTest {
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+
+	@Before
+	public void limitToTwoCombinations() {
+		Cardinality cardinality = new Cardinality();
+		cardinality.setMaxTagCombinations(2);
+		TagCardinalityLimiter limiter = new TagCardinalityLimiter(cardinality, "http.server.requests");
+		registry.config().meterFilter(limiter);
+		limiter.bindTo(registry);
+	}
+
+	@Test
+	public void eachRejectedCombinationIsCountedOnce() {
+		registry.counter("scans", "uri", "/a").increment();
+		registry.counter("scans", "uri", "/b").increment();
+		for (int i = 0; i < 5; i++) {
+			registry.counter("scans", "uri", "/c").increment();
+		}
+		registry.counter("scans", "uri", "/d").increment();
+
+		Assert.assertEquals(2, rejected("scans"), 0);
+		Assert.assertEquals(6, registry.get("scans").tag("uri", TagCardinalityLimiter.OTHER).counter().count(), 0);
+	}
+
+	@Test
+	public void rejectedCombinationsBeyondTheMemoryAreCountedPerLookup() {
+		for (String uri : new String[] { "/a", "/b", "/c", "/d" }) {
+			registry.counter("scans", "uri", uri);
+		}
+		Counter other = registry.counter("scans", "uri", "/e");
+		registry.counter("scans", "uri", "/e");
+
+		Assert.assertEquals(TagCardinalityLimiter.OTHER, other.getId().getTag("uri"));
+		Assert.assertEquals("/c and /d remembered, /e counted on every lookup", 4, rejected("scans"), 0);
+	}
+
+	private double rejected(String name) {
+		return registry.get("metrics.cardinality.rejected").tag("name", name).functionCounter().count();
+	}
+}
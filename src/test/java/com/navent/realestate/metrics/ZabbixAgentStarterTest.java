@@ -0,0 +1,60 @@
+package com.navent.realestate.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.quigley.zabbixj.agent.ZabbixAgent;
+
+public class ZabbixAgentStarterTest {
+	// .invalid nunca resuelve (RFC 2606)
+	private static final String UNREACHABLE_HOST = "zabbix.invalid";
+
+	private ZabbixAgentStarter starter;
+
+	@After
+	public void stopStarter() throws Exception {
+		if (starter != null) {
+			starter.stop();
+		}
+	}
+
+	@Test
+	public void startDoesNotBlockWhileTheServerIsUnreachable() throws Exception {
+		starter = new ZabbixAgentStarter(new ZabbixAgent(), UNREACHABLE_HOST, 10, 40);
+
+		long start = System.nanoTime();
+		starter.start();
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		Assert.assertTrue("start() took " + elapsedMillis + " ms", elapsedMillis < 500);
+		await(() -> starter.getAttempts() >= 3);
+		Assert.assertEquals(ZabbixAgentStarter.State.RETRYING, starter.getState());
+		Assert.assertNotNull(starter.getLastError());
+	}
+
+	@Test
+	public void stopEndsTheRetries() throws Exception {
+		starter = new ZabbixAgentStarter(new ZabbixAgent(), UNREACHABLE_HOST, 10, 40);
+		starter.start();
+		await(() -> starter.getAttempts() >= 1);
+
+		starter.stop();
+		int attempts = starter.getAttempts();
+		Thread.sleep(200);
+
+		Assert.assertEquals(ZabbixAgentStarter.State.STOPPED, starter.getState());
+		Assert.assertTrue(starter.getAttempts() <= attempts + 1);
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+		while (!condition.getAsBoolean()) {
+			Assert.assertTrue("timed out", System.nanoTime() < deadline);
+			Thread.sleep(10);
+		}
+	}
+}
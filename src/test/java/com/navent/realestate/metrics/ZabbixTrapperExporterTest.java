@@ -0,0 +1,190 @@
+package com.navent.realestate.metrics;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ZabbixTrapperExporterTest {
+	private static final byte[] HEADER = { 'Z', 'B', 'X', 'D', 1 };
+	private static final String HOST = "app-01";
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+	private final AtomicLong requests = new AtomicLong(10);
+	private FakeTrapper trapper;
+	private ZabbixTrapperExporter exporter;
+
+	@Before
+	public void startTrapper() throws Exception {
+		Gauge.builder("requests", requests, AtomicLong::get).register(registry);
+		trapper = new FakeTrapper();
+		exporter = new ZabbixTrapperExporter(new ZabbixTrapperSender("127.0.0.1", trapper.getPort(), 1000, 1000),
+				HOST, 60);
+	}
+
+	@After
+	public void stopTrapper() throws Exception {
+		trapper.close();
+	}
+
+	@Test
+	public void sendsSenderDataWithTheTrapperFraming() throws Exception {
+		trapper.reply("success", "processed: 1; failed: 0; total: 1; seconds spent: 0.000050");
+		MetricsSnapshot snapshot = MetricsSnapshot.take(registry);
+
+		exporter.export(snapshot);
+
+		byte[] frame = trapper.takeFrame();
+		Assert.assertArrayEquals(HEADER, Arrays.copyOf(frame, HEADER.length));
+		long length = ByteBuffer.wrap(frame, HEADER.length, Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).getLong();
+		Assert.assertEquals(frame.length - HEADER.length - Long.BYTES, length);
+
+		JsonNode request = body(frame);
+		long clock = snapshot.getTimestamp() / 1000;
+		Assert.assertEquals("sender data", request.path("request").asText());
+		Assert.assertEquals(clock, request.path("clock").asLong());
+		JsonNode item = request.path("data").get(0);
+		Assert.assertEquals(HOST, item.path("host").asText());
+		Assert.assertEquals("metrics[\"requests\",\"value\"]", item.path("key").asText());
+		Assert.assertEquals("10", item.path("value").asText());
+		Assert.assertEquals(clock, item.path("clock").asLong());
+	}
+
+	@Test
+	public void resendsUnchangedValuesUntilTheServerProcessesThemAll() throws Exception {
+		trapper.reply("success", "processed: 0; failed: 1; total: 1; seconds spent: 0.000050");
+		trapper.reply("success", "processed: 1; failed: 0; total: 1; seconds spent: 0.000050");
+
+		exporter.export(MetricsSnapshot.take(registry));
+		exporter.export(MetricsSnapshot.take(registry));
+		exporter.export(MetricsSnapshot.take(registry));
+
+		Assert.assertEquals("10", body(trapper.takeFrame()).path("data").get(0).path("value").asText());
+		Assert.assertEquals("10", body(trapper.takeFrame()).path("data").get(0).path("value").asText());
+		Assert.assertEquals("unchanged values are sent once after a clean batch", 2, trapper.getConnections());
+	}
+
+	@Test
+	public void resendsAfterTheServerRejectsTheBatch() throws Exception {
+		trapper.reply("failed", "");
+		trapper.reply("success", "processed: 1; failed: 0; total: 1; seconds spent: 0.000050");
+
+		exporter.export(MetricsSnapshot.take(registry));
+		exporter.export(MetricsSnapshot.take(registry));
+		requests.set(11);
+		trapper.reply("success", "processed: 1; failed: 0; total: 1; seconds spent: 0.000050");
+		exporter.export(MetricsSnapshot.take(registry));
+
+		trapper.takeFrame();
+		trapper.takeFrame();
+		Assert.assertEquals("11", body(trapper.takeFrame()).path("data").get(0).path("value").asText());
+		Assert.assertEquals(3, trapper.getConnections());
+	}
+
+	private JsonNode body(byte[] frame) throws IOException {
+		int offset = HEADER.length + Long.BYTES;
+		return mapper.readTree(Arrays.copyOfRange(frame, offset, frame.length));
+	}
+
+	/**
+	 * Server de trapper que atiende una conexion a la vez: guarda el paquete recibido y contesta con la siguiente
+	 * respuesta encolada.
+	 */
+	private class FakeTrapper implements AutoCloseable {
+		private final ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		private final BlockingQueue<byte[]> frames = new LinkedBlockingQueue<>();
+		private final BlockingQueue<byte[]> replies = new LinkedBlockingQueue<>();
+		private final List<Throwable> errors = new CopyOnWriteArrayList<>();
+		private final Thread thread = new Thread(this::serve, "fake-zabbix-trapper");
+		private volatile int connections;
+
+		FakeTrapper() throws IOException {
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		int getPort() {
+			return server.getLocalPort();
+		}
+
+		int getConnections() {
+			return connections;
+		}
+
+		void reply(String response, String info) throws IOException {
+			byte[] body = mapper.writeValueAsBytes(mapper.createObjectNode()
+					.put("response", response)
+					.put("info", info));
+			replies.add(ByteBuffer.allocate(HEADER.length + Long.BYTES + body.length).order(ByteOrder.LITTLE_ENDIAN)
+					.put(HEADER)
+					.putLong(body.length)
+					.put(body)
+					.array());
+		}
+
+		byte[] takeFrame() throws InterruptedException {
+			byte[] frame = frames.poll(5, TimeUnit.SECONDS);
+			Assert.assertTrue("trapper errors: " + errors, errors.isEmpty());
+			Assert.assertNotNull("no packet received", frame);
+			return frame;
+		}
+
+		private void serve() {
+			while (!server.isClosed()) {
+				try (Socket socket = server.accept()) {
+					connections++;
+					DataInputStream in = new DataInputStream(socket.getInputStream());
+					byte[] header = new byte[HEADER.length + Long.BYTES];
+					in.readFully(header);
+					long length = ByteBuffer.wrap(header, HEADER.length, Long.BYTES).order(ByteOrder.LITTLE_ENDIAN)
+							.getLong();
+					byte[] body = new byte[(int) length];
+					in.readFully(body);
+					frames.add(ByteBuffer.allocate(header.length + body.length).put(header).put(body).array());
+
+					// sin respuesta encolada se cierra la conexion y el envio falla
+					byte[] reply = replies.poll();
+					if (reply != null) {
+						OutputStream out = socket.getOutputStream();
+						out.write(reply);
+						out.flush();
+					}
+				} catch (IOException e) {
+					if (!server.isClosed()) {
+						errors.add(e);
+					}
+				}
+			}
+		}
+
+		@Override
+		public void close() throws Exception {
+			server.close();
+			thread.join(1000);
+		}
+	}
+}
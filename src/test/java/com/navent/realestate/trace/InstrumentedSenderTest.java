@@ -0,0 +1,156 @@
+package com.navent.realestate.trace;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import zipkin2.codec.Encoding;
+import zipkin2.reporter.urlconnection.URLConnectionSender;
+
+public class InstrumentedSenderTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+	private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+	private volatile boolean collectorUp;
+	private HttpServer collector;
+	private URLConnectionSender http;
+
+	/**
+	 * Collector de mentira: mientras esta caido contesta 503, despues guarda cada mensaje y contesta 202.
+	 */
+	@Before
+	public void startCollector() throws Exception {
+		collector = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		collector.createContext("/api/v2/spans", this::collect);
+		collector.start();
+		http = URLConnectionSender.newBuilder()
+				.endpoint("http://127.0.0.1:" + collector.getAddress().getPort() + "/api/v2/spans")
+				.encoding(Encoding.JSON)
+				.compressionEnabled(false)
+				.connectTimeout(1000)
+				.readTimeout(1000)
+				.build();
+	}
+
+	@After
+	public void stopCollector() throws Exception {
+		http.close();
+		collector.stop(0);
+	}
+
+	@Test
+	public void spooledSpansAreDeliveredWhenTheCollectorComesBack() throws Exception {
+		Path directory = folder.newFolder("spool").toPath();
+		List<byte[]> first = spans("a", "b");
+		List<byte[]> second = spans("c");
+		List<byte[]> third = spans("d", "e", "f");
+		// entran los dos primeros mensajes y el tercero no
+		SpanSpool spool = new SpanSpool(directory, spooledSize(first) + spooledSize(second), registry);
+		InstrumentedSender sender = new InstrumentedSender(http, spool, new TraceReporterMetrics(registry), registry);
+
+		sender.sendSpans(first).execute();
+		sender.sendSpans(second).execute();
+		try {
+			sender.sendSpans(third).execute();
+			Assert.fail("the spool is full, the message should fail");
+		} catch (IOException expected) {
+		}
+		Assert.assertTrue(received.isEmpty());
+		Assert.assertEquals(3, registry.get("zipkin.reporter.spool.spans").counter().count(), 0);
+		Assert.assertEquals(3, registry.get("zipkin.reporter.spool.dropped").counter().count(), 0);
+
+		collectorUp = true;
+		sender.sendSpans(spans("g")).execute();
+
+		Assert.assertEquals(Arrays.asList(message("g"), message("a", "b"), message("c")), received);
+		Assert.assertTrue(spool.pending(Integer.MAX_VALUE).isEmpty());
+		Assert.assertEquals(0, registry.get("zipkin.reporter.spool.bytes").gauge().value(), 0);
+	}
+
+	@Test
+	public void corruptSpoolFilesAreDiscardedWithoutBlockingTheRest() throws Exception {
+		Path directory = folder.newFolder("spool").toPath();
+		// se ordenan antes que los que escribe el spool: uno declara mas spans de los que entran, otro esta truncado
+		Files.write(directory.resolve("00000000000000000000-0000000001.spool"), new byte[] { 0x7f, 0, 0, 0, 0, 0 });
+		Files.write(directory.resolve("00000000000000000000-0000000002.spool"),
+				new byte[] { 0, 0, 0, 1, 0, 0, 0, 9, 1 });
+		SpanSpool spool = new SpanSpool(directory, 1024 * 1024, registry);
+		InstrumentedSender sender = new InstrumentedSender(http, spool, new TraceReporterMetrics(registry), registry);
+
+		sender.sendSpans(spans("a")).execute();
+		collectorUp = true;
+		sender.sendSpans(spans("b")).execute();
+
+		Assert.assertEquals(Arrays.asList(message("b"), message("a")), received);
+		Assert.assertEquals(2, registry.get("zipkin.reporter.spool.discarded").counter().count(), 0);
+		Assert.assertTrue(spool.pending(Integer.MAX_VALUE).isEmpty());
+		Assert.assertEquals(0, registry.get("zipkin.reporter.spool.bytes").gauge().value(), 0);
+	}
+
+	private void collect(HttpExchange exchange) throws IOException {
+		boolean up = collectorUp;
+		try (InputStream body = exchange.getRequestBody()) {
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			for (int read; (read = body.read(buffer)) != -1;) {
+				content.write(buffer, 0, read);
+			}
+			if (up) {
+				received.add(new String(content.toByteArray(), StandardCharsets.UTF_8));
+			}
+		}
+		exchange.sendResponseHeaders(up ? 202 : 503, -1);
+		exchange.close();
+	}
+
+	private static List<byte[]> spans(String... names) {
+		List<byte[]> spans = new ArrayList<>();
+		for (String name : names) {
+			spans.add(span(name).getBytes(StandardCharsets.UTF_8));
+		}
+		return spans;
+	}
+
+	private static String message(String... names) {
+		List<String> spans = new ArrayList<>();
+		for (String name : names) {
+			spans.add(span(name));
+		}
+		return "[" + String.join(",", spans) + "]";
+	}
+
+	private static String span(String name) {
+		return "{\"traceId\":\"000000000000000a\",\"id\":\"000000000000000a\",\"name\":\"" + name + "\"}";
+	}
+
+	private static long spooledSize(List<byte[]> spans) {
+		long size = Integer.BYTES;
+		for (byte[] span : spans) {
+			size += Integer.BYTES + span.length;
+		}
+		return size;
+	}
+}
@@ -0,0 +1,62 @@
+package com.navent.realestate.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.navent.realestate.metrics.NaventMetricsProperties.Sampling;
+
+import brave.sampler.Sampler;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import zipkin2.Span;
+
+public class InterestingTraceReporterTest {
+	private static final String TRACE_ID = "000000000000000a";
+
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+	private final List<Span> reported = new ArrayList<>();
+
+	@Test
+	public void pendingChildrenAreCappedPerTrace() {
+		Sampling sampling = new Sampling();
+		sampling.setKeepInteresting(true);
+		sampling.setPendingMaxSpans(3);
+		InterestingTraceReporter reporter = new InterestingTraceReporter(reported::add, Sampler.NEVER_SAMPLE,
+				sampling, null, registry);
+
+		for (int i = 1; i <= 5; i++) {
+			reporter.report(child(i));
+		}
+		reporter.report(Span.newBuilder().traceId(TRACE_ID).id(TRACE_ID).name("get").kind(Span.Kind.SERVER)
+				.putTag("error", "boom").build());
+
+		Assert.assertEquals("three children and the root", 4, reported.size());
+		Assert.assertEquals(2, registry.get("zipkin.sampler.spans.dropped").counter().count(), 0);
+		Assert.assertEquals(1, registry.get("zipkin.sampler.traces").tag("decision", "interesting").counter()
+				.count(), 0);
+	}
+
+	@Test
+	public void childrenOfDecidedTracesAreNotCapped() {
+		Sampling sampling = new Sampling();
+		sampling.setPendingMaxSpans(1);
+		InterestingTraceReporter reporter = new InterestingTraceReporter(reported::add, Sampler.ALWAYS_SAMPLE,
+				sampling, null, registry);
+
+		reporter.report(Span.newBuilder().traceId(TRACE_ID).id(TRACE_ID).name("get").kind(Span.Kind.SERVER).build());
+		for (int i = 1; i <= 3; i++) {
+			reporter.report(child(i));
+		}
+
+		Assert.assertEquals(4, reported.size());
+		Assert.assertEquals(0, registry.get("zipkin.sampler.spans.dropped").counter().count(), 0);
+	}
+
+	private static Span child(int id) {
+		return Span.newBuilder().traceId(TRACE_ID).parentId(TRACE_ID).id(String.format("%016x", 100 + id))
+				.name("query").kind(Span.Kind.CLIENT).build();
+	}
+}
@@ -0,0 +1,74 @@
+package com.navent.realestate.trace;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.navent.realestate.metrics.NaventMetricsProperties;
+import com.navent.realestate.metrics.NaventMetricsProperties.SamplingMode;
+
+import brave.Tracing;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import zipkin2.Span;
+
+public class TraceConfigTest {
+	private final List<Span> reported = new ArrayList<>();
+	private Tracing tracing;
+
+	@After
+	public void closeTracing() {
+		if (tracing != null) {
+			tracing.close();
+		}
+	}
+
+	@Test
+	public void propagatesTheBaseDecisionWithoutDeferredSampling() {
+		tracing = TraceConfig.tracing(properties(false), reported::add, new SimpleMeterRegistry());
+
+		brave.Span root = tracing.tracer().newTrace().name("get").kind(brave.Span.Kind.SERVER).start();
+
+		Assert.assertEquals("0", injectedSampled(root));
+		root.finish();
+		Assert.assertTrue(reported.isEmpty());
+	}
+
+	/**
+	 * El efecto sobre los servicios de abajo: con keepInteresting todas las trazas se propagan grabadas aunque la
+	 * tasa base sea 0, y solo esta aplicacion descarta las que no son interesantes.
+	 */
+	@Test
+	public void deferredSamplingPropagatesEveryTraceAsSampled() {
+		tracing = TraceConfig.tracing(properties(true), reported::add, new SimpleMeterRegistry());
+
+		brave.Span boring = tracing.tracer().newTrace().name("get").kind(brave.Span.Kind.SERVER).start();
+		brave.Span failed = tracing.tracer().newTrace().name("get").kind(brave.Span.Kind.SERVER).start();
+
+		Assert.assertEquals("1", injectedSampled(boring));
+		Assert.assertEquals("1", injectedSampled(failed));
+		boring.finish();
+		failed.tag("error", "boom").finish();
+		Assert.assertEquals(1, reported.size());
+		Assert.assertEquals("boom", reported.get(0).tags().get("error"));
+	}
+
+	private String injectedSampled(brave.Span span) {
+		Map<String, String> headers = new HashMap<>();
+		tracing.propagation().<Map<String, String>>injector(Map::put).inject(span.context(), headers);
+		return headers.get("X-B3-Sampled");
+	}
+
+	private static NaventMetricsProperties properties(boolean keepInteresting) {
+		NaventMetricsProperties properties = new NaventMetricsProperties();
+		properties.getTrace().setServiceName("test");
+		properties.getTrace().getSampling().setMode(SamplingMode.PROBABILITY);
+		properties.getTrace().getSampling().setProbability(0);
+		properties.getTrace().getSampling().setKeepInteresting(keepInteresting);
+		return properties;
+	}
+}